@@ -0,0 +1,90 @@
+package searchengine.benchmarks;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.Application;
+import searchengine.services.IndexingService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запуск приложения для сквозных бенчмарков: встроенная база H2 в режиме MySQL вместо сервера из application.yaml
+ * и сайты-симуляторы вместо настоящих сайтов. Аргументы командной строки старше application.yaml,
+ * а список сайтов заменяется целиком.
+ */
+final class BenchmarkApplication {
+    static final long POLL_MS = 100;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(List<SiteSimulator> sites, boolean web, List<String> extraArgs,
+                                                BeanPostProcessor... postProcessors) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.main.web-application-type=" + (web ? "servlet" : "none"),
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.sql.init.mode=never",
+                "--logging.level.searchengine=WARN",
+                "--indexing-settings.search.segment-dir="));
+        for (int i = 0; i < sites.size(); i++) {
+            args.add("--indexing-settings.sites[" + i + "].url=" + sites.get(i).rootUrl());
+            args.add("--indexing-settings.sites[" + i + "].name=simulator-" + i);
+        }
+        args.addAll(extraArgs);
+
+        SpringApplication application = new SpringApplication(Application.class);
+        for (BeanPostProcessor postProcessor : postProcessors) {
+            application.addInitializers(context -> context.getBeanFactory().addBeanPostProcessor(postProcessor));
+        }
+        return application.run(args.toArray(String[]::new));
+    }
+
+    /**
+     * Ждёт окончания индексации, вызывая onPoll раз в POLL_MS; по истечении timeoutMs останавливает её.
+     * Возвращает false, если индексация прервана по таймауту.
+     */
+    static boolean awaitIndexing(IndexingService indexingService, long timeoutMs, Runnable onPoll)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000;
+        while (indexingService.isIndexingInProgress()) {
+            onPoll.run();
+            if (System.nanoTime() > deadline) {
+                indexingService.stopIndexing();
+                return false;
+            }
+            Thread.sleep(POLL_MS);
+        }
+        return true;
+    }
+
+    /**
+     * Параметры вида --имя=значение.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Ожидается параметр вида --имя=значение: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
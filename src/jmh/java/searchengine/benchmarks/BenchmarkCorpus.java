@@ -0,0 +1,126 @@
+package searchengine.benchmarks;
+
+import java.util.*;
+
+/**
+ * Воспроизводимые тексты для бенчмарков: словоформы русского и английского словарей выбираются по закону Ципфа
+ * генератором с фиксированным зерном, поэтому при одинаковых параметрах тексты совпадают между запусками.
+ * Частые слова в начале словарей — служебные, как в настоящих текстах.
+ */
+public final class BenchmarkCorpus {
+
+    public enum Language {
+        RUSSIAN, ENGLISH, MIXED
+    }
+
+    private static final String[] RUSSIAN = {
+            "и", "в", "не", "на", "что", "с", "по", "как", "для", "от", "к", "из", "или", "но", "о", "же",
+            "сайт", "сайта", "сайты", "сайтов", "страница", "страницы", "страниц", "странице", "поиск", "поиска",
+            "поиске", "индекс", "индекса", "индексы", "запрос", "запроса", "запросы", "запросов", "слово", "слова",
+            "слов", "словами", "текст", "текста", "тексте", "тексты", "движок", "движка", "движке", "результат",
+            "результаты", "результатов", "лемма", "леммы", "лемм", "база", "базы", "базе", "данные", "данных",
+            "пользователь", "пользователя", "пользователи", "ссылка", "ссылки", "ссылок", "время", "времени",
+            "работа", "работы", "система", "системы", "системе", "новый", "новая", "новые", "новых", "быстрый",
+            "быстрая", "быстро", "большой", "большие", "больших", "русский", "русского", "полный", "полная",
+            "находить", "находит", "нашёл", "найти", "искать", "ищет", "искал", "обходить", "обходит", "обошёл",
+            "сохранять", "сохраняет", "сохранил", "считать", "считает", "показывать", "показывает", "показал",
+            "ёлка", "ёлки", "объём", "объёма", "своём", "йогурт", "район", "района", "зимний", "зимняя"
+    };
+
+    private static final String[] ENGLISH = {
+            "the", "of", "and", "to", "in", "a", "is", "for", "on", "with", "as", "by", "or", "at", "from", "it",
+            "site", "sites", "page", "pages", "search", "searches", "searching", "index", "indexes", "indexed",
+            "query", "queries", "word", "words", "text", "texts", "engine", "engines", "result", "results", "lemma",
+            "lemmas", "database", "databases", "data", "user", "users", "link", "links", "time", "times", "work",
+            "works", "worked", "system", "systems", "new", "newer", "fast", "faster", "fastest", "large", "larger",
+            "full", "english", "russian", "find", "finds", "found", "finding", "crawl", "crawls", "crawled",
+            "crawler", "store", "stores", "stored", "count", "counts", "counted", "show", "shows", "showed",
+            "shown", "rank", "ranks", "ranked", "ranking", "snippet", "snippets", "build", "builds", "built",
+            "document", "documents", "server", "servers", "request", "requests", "answer", "answers", "quickly"
+    };
+
+    private static final double ZIPF_EXPONENT = 1.07;
+    private static final int MIN_SENTENCE_WORDS = 6;
+    private static final int MAX_SENTENCE_WORDS = 18;
+    // служебных слов в начале словаря каждого языка; в запросы они не попадают
+    private static final int SERVICE_WORDS = 16;
+
+    private final String[] words;
+    private final int firstQueryRank;
+    private final ZipfDistribution distribution;
+    private final SplittableRandom random;
+
+    public BenchmarkCorpus(Language language, long seed) {
+        this.words = vocabulary(language);
+        this.firstQueryRank = language == Language.MIXED ? 2 * SERVICE_WORDS : SERVICE_WORDS;
+        this.distribution = new ZipfDistribution(words.length, ZIPF_EXPONENT);
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Текст из предложений: первое слово с заглавной буквы, в конце точка, внутри изредка запятые.
+     */
+    public String text(int wordCount) {
+        StringBuilder text = new StringBuilder(wordCount * 8);
+        int sentenceLeft = 0;
+        for (int i = 0; i < wordCount; i++) {
+            String word = nextWord();
+            if (sentenceLeft == 0) {
+                if (i > 0) {
+                    text.append(". ");
+                }
+                sentenceLeft = random.nextInt(MIN_SENTENCE_WORDS, MAX_SENTENCE_WORDS + 1);
+                text.appendCodePoint(Character.toUpperCase(word.codePointAt(0))).append(word, 1, word.length());
+            } else {
+                text.append(random.nextInt(10) == 0 ? ", " : " ").append(word);
+            }
+            sentenceLeft--;
+        }
+        return text.append('.').toString();
+    }
+
+    public List<String> texts(int count, int wordCount) {
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add(text(wordCount));
+        }
+        return texts;
+    }
+
+    /**
+     * Запрос из разных значимых слов; первое — из частых, остальные — из всего словаря.
+     */
+    public List<String> query(int terms) {
+        Set<String> query = new LinkedHashSet<>();
+        query.add(words[firstQueryRank + random.nextInt(SERVICE_WORDS)]);
+        while (query.size() < Math.min(terms, words.length - firstQueryRank)) {
+            query.add(words[firstQueryRank + random.nextInt(words.length - firstQueryRank)]);
+        }
+        return new ArrayList<>(query);
+    }
+
+    private String nextWord() {
+        return words[distribution.sample(random)];
+    }
+
+    // в смешанном словаре слова чередуются, чтобы частоты обоих языков были сопоставимы
+    private static String[] vocabulary(Language language) {
+        return switch (language) {
+            case RUSSIAN -> RUSSIAN;
+            case ENGLISH -> ENGLISH;
+            case MIXED -> {
+                String[] mixed = new String[RUSSIAN.length + ENGLISH.length];
+                int size = 0;
+                for (int i = 0; i < Math.max(RUSSIAN.length, ENGLISH.length); i++) {
+                    if (i < RUSSIAN.length) {
+                        mixed[size++] = RUSSIAN[i];
+                    }
+                    if (i < ENGLISH.length) {
+                        mixed[size++] = ENGLISH[i];
+                    }
+                }
+                yield mixed;
+            }
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package searchengine.benchmarks;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import searchengine.services.IndexingService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сквозной бенчмарк обхода: приложение поднимается со встроенной базой H2 (режим MySQL) и одним сайтом —
+ * {@link SiteSimulator}, после чего IndexingService.startFullIndexing выполняется до завершения.
+ * <p>
+ * Запуск: mvn -Pbenchmarks test-compile exec:exec@crawl -Dcrawl.args="--pages=5000 --latency-ms=50"
+ * <p>
+ * Параметры (--имя=значение): pages, fan-out, latency-ms, latency-jitter-ms, error-rate, page-words, seed —
+ * сайт; mode (PIPELINE | VIRTUAL_THREADS | FORK_JOIN), rps, connections — обход; timeout-minutes.
+ * Отчёт: страниц в секунду, обращений к базе на страницу, p50/p99 задержки страницы от начала загрузки
+ * до сохранения (по метрикам конвейера, в режиме FORK_JOIN их нет) и пиковая занятость кучи.
+ */
+public final class CrawlBenchmark {
+    private CrawlBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BenchmarkApplication.parseOptions(args);
+        SiteSimulator.Settings siteSettings = new SiteSimulator.Settings(
+                BenchmarkApplication.intOption(options, "pages", 2_000),
+                BenchmarkApplication.intOption(options, "fan-out", 8),
+                BenchmarkApplication.intOption(options, "latency-ms", 20),
+                BenchmarkApplication.intOption(options, "latency-jitter-ms", 10),
+                Double.parseDouble(options.getOrDefault("error-rate", "0.01")),
+                BenchmarkApplication.intOption(options, "page-words", 400),
+                Long.parseLong(options.getOrDefault("seed", "1")));
+        String mode = options.getOrDefault("mode", "PIPELINE");
+        long timeoutMs = TimeUnit.MINUTES.toMillis(BenchmarkApplication.intOption(options, "timeout-minutes", 30));
+
+        StatementCounter statementCounter = new StatementCounter();
+        try (SiteSimulator simulator = new SiteSimulator(siteSettings);
+             ConfigurableApplicationContext context = BenchmarkApplication.start(List.of(simulator), false, List.of(
+                     "--indexing-settings.crawler-mode=" + mode,
+                     "--indexing-settings.sites[0].max-requests-per-second=" + options.getOrDefault("rps", "1000"),
+                     "--indexing-settings.sites[0].max-connections=" + options.getOrDefault("connections", "16")),
+                     statementCounter)) {
+            IndexingService indexingService = context.getBean(IndexingService.class);
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+            System.gc();
+            List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            long[] sampledPeakHeap = {0};
+            StatementCounter.Counts before = statementCounter.counts();
+            long started = System.nanoTime();
+
+            indexingService.startFullIndexing();
+            boolean completed = BenchmarkApplication.awaitIndexing(indexingService, timeoutMs,
+                    () -> sampledPeakHeap[0] = Math.max(sampledPeakHeap[0], usedHeap()));
+            double seconds = (System.nanoTime() - started) / 1e9;
+            StatementCounter.Counts counts = statementCounter.counts().minus(before);
+            long poolPeaks = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+            long pages = Objects.requireNonNull(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM page", Long.class));
+            Map<String, Object> pipeline = indexingService.getFinishedPipelineMetrics().get(simulator.rootUrl());
+
+            System.out.println();
+            System.out.println("Сайт: " + siteSettings + ", режим " + mode + (completed ? "" : " (прерван по таймауту)"));
+            System.out.printf("Время: %.1f с, запросов к сайту: %d, из них ошибок 500: %d%n",
+                    seconds, simulator.requests(), simulator.errors());
+            System.out.printf("Страниц сохранено: %d, страниц в секунду: %.1f%n", pages, pages / seconds);
+            System.out.printf("Обращений к базе на страницу: %.2f (запросов %d, пакетов %d, строк в пакетах %d)%n",
+                    (double) counts.roundTrips() / Math.max(1, pages), counts.statements(), counts.batches(),
+                    counts.batchedRows());
+            if (pipeline != null) {
+                System.out.printf("Задержка страницы, мс: p50 %s, p99 %s, max %s%n", pipeline.get("pageLatencyP50Ms"),
+                        pipeline.get("pageLatencyP99Ms"), pipeline.get("pageLatencyMaxMs"));
+            }
+            System.out.printf("Пик кучи: %d МБ (замеры раз в %d мс), сумма пиков областей кучи: %d МБ%n",
+                    sampledPeakHeap[0] >> 20, BenchmarkApplication.POLL_MS, poolPeaks >> 20);
+        }
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
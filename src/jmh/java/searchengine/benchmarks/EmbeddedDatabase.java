@@ -0,0 +1,88 @@
+package searchengine.benchmarks;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import searchengine.model.Page;
+import searchengine.model.Site;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Встроенная база H2 в режиме совместимости с MySQL со схемой таблиц page, lemma и index в том виде,
+ * в каком их используют LemmaIndexWriter, SearchIndex и LemmaPositionStore. Живёт в памяти до close().
+ */
+final class EmbeddedDatabase implements AutoCloseable {
+    private static final String[] SCHEMA = {
+            "CREATE TABLE page (id INT AUTO_INCREMENT PRIMARY KEY, site_id INT NOT NULL, path VARCHAR(500) NOT NULL, " +
+                    "code INT NOT NULL, content MEDIUMTEXT NOT NULL, content_type VARCHAR(500), token_count INT)",
+            "CREATE INDEX idx_page_site_id ON page (site_id)",
+            "CREATE TABLE lemma (id INT AUTO_INCREMENT PRIMARY KEY, site_id INT NOT NULL, lemma VARCHAR(500) NOT NULL, " +
+                    "frequency INT NOT NULL)",
+            "CREATE UNIQUE INDEX idx_lemma_site ON lemma (lemma, site_id)",
+            "CREATE TABLE `index` (id INT AUTO_INCREMENT PRIMARY KEY, page_id INT NOT NULL, lemma_id INT NOT NULL, " +
+                    "`rank` FLOAT NOT NULL, positions MEDIUMBLOB)",
+            "CREATE INDEX idx_index_page_id ON `index` (page_id)",
+            "CREATE INDEX idx_index_lemma_id ON `index` (lemma_id)"
+    };
+    private static final String INSERT_PAGE = "INSERT INTO page (id, site_id, path, code, content) VALUES (?, ?, ?, 200, ?)";
+
+    private final SingleConnectionDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private int nextPageId = 1;
+
+    EmbeddedDatabase(String name) {
+        // одно соединение на всё время жизни: в памяти H2 база существует, пока оно открыто
+        this.dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE", "sa", "", true);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        for (String statement : SCHEMA) {
+            jdbcTemplate.execute(statement);
+        }
+    }
+
+    JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    static Site site(int id) {
+        Site site = new Site();
+        site.setId(id);
+        site.setUrl("https://site" + id + ".example");
+        site.setName("site" + id);
+        return site;
+    }
+
+    /**
+     * Сохраняет страницы с заданными текстами и возвращает их сущности с id, как после PageRepository.save.
+     */
+    List<Page> insertPages(Site site, List<String> texts) {
+        List<Page> pages = new ArrayList<>(texts.size());
+        List<Object[]> rows = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            Page page = new Page();
+            page.setId(nextPageId++);
+            page.setSite(site);
+            page.setPath("/page/" + page.getId());
+            page.setCode(200);
+            page.setContent(text);
+            pages.add(page);
+            rows.add(new Object[]{page.getId(), site.getId(), page.getPath(), text});
+        }
+        jdbcTemplate.batchUpdate(INSERT_PAGE, rows);
+        return pages;
+    }
+
+    /**
+     * Удаляет леммы и индексы, оставляя страницы: следующая запись начинается с пустого индекса.
+     */
+    void clearIndex() {
+        jdbcTemplate.execute("TRUNCATE TABLE `index`");
+        jdbcTemplate.execute("TRUNCATE TABLE lemma");
+    }
+
+    @Override
+    public void close() {
+        dataSource.destroy();
+    }
+}
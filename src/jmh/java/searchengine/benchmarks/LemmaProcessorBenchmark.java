@@ -0,0 +1,73 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import searchengine.utils.LemmaPositions;
+import searchengine.utils.LemmaProcessor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор и лемматизация текста страницы.
+ * tokenize — проход по словам при прогретом кэше словоформ (почти без обращений к морфологии),
+ * lemmatizeUncached — тот же проход с кэшем на 16 словоформ, где почти каждое слово уходит в словари,
+ * collectLemmaPositions — леммы с позициями, как при индексации, в том числе пакетом через пул лемматизации.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LemmaProcessorBenchmark {
+    private static final int PAGE_WORDS = 2_000;
+    private static final int BATCH_PAGES = 16;
+
+    @Param({"RUSSIAN", "ENGLISH", "MIXED"})
+    public BenchmarkCorpus.Language language;
+
+    private LemmaProcessor cached;
+    private LemmaProcessor uncached;
+    private String text;
+    private List<String> batch;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(language, 42);
+        text = corpus.text(PAGE_WORDS);
+        batch = corpus.texts(BATCH_PAGES, PAGE_WORDS);
+        cached = new LemmaProcessor(100_000);
+        uncached = new LemmaProcessor(16);
+        cached.extractLemmas(text);
+        batch.forEach(cached::extractLemmas);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cached.shutdown();
+        uncached.shutdown();
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        cached.forEachLemma(text, (lemma, ordinal, offset) -> blackhole.consume(lemma));
+    }
+
+    @Benchmark
+    public void lemmatizeUncached(Blackhole blackhole) {
+        uncached.forEachLemma(text, (lemma, ordinal, offset) -> blackhole.consume(lemma));
+    }
+
+    @Benchmark
+    public Map<String, LemmaPositions> collectLemmaPositions() {
+        return cached.collectLemmaPositions(text);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_PAGES)
+    public List<Map<String, LemmaPositions>> collectLemmaPositionsBatch() {
+        return cached.collectLemmaPositions(batch);
+    }
+}
@@ -0,0 +1,91 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.config.SitesList;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.services.LemmaIndexWriter;
+import searchengine.services.SearchIndex;
+import searchengine.utils.LemmaPositions;
+import searchengine.utils.LemmaProcessor;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетная запись лемм и индексов страниц через LemmaIndexWriter во встроенную базу: одни и те же
+ * PAGES страниц пишутся пакетами по batchSize. Результат — страниц в секунду. Перед каждой итерацией
+ * таблицы lemma и index очищаются, чтобы их рост не искажал итерации.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PersistenceBenchmark {
+    private static final int PAGES = 40;
+
+    @Param({"RUSSIAN", "ENGLISH"})
+    public BenchmarkCorpus.Language language;
+
+    @Param({"300", "3000"})
+    public int pageWords;
+
+    @Param({"1", "20"})
+    public int batchSize;
+
+    private EmbeddedDatabase database;
+    private SearchIndex searchIndex;
+    private LemmaIndexWriter writer;
+    private List<List<LemmaIndexWriter.PageLemmas>> batches;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase("persistence");
+        SitesList settings = new SitesList();
+        settings.getSearch().setSegmentDir("");
+        searchIndex = new SearchIndex(database.jdbcTemplate(), settings);
+        writer = new LemmaIndexWriter(database.jdbcTemplate(), searchIndex);
+
+        List<String> texts = new BenchmarkCorpus(language, 5).texts(PAGES, pageWords);
+        Site site = EmbeddedDatabase.site(1);
+        List<Page> pages = database.insertPages(site, texts);
+        LemmaProcessor lemmaProcessor = new LemmaProcessor(100_000);
+        List<Map<String, LemmaPositions>> lemmas;
+        try {
+            lemmas = lemmaProcessor.collectLemmaPositions(texts);
+        } finally {
+            lemmaProcessor.shutdown();
+        }
+        batches = new ArrayList<>();
+        for (int from = 0; from < PAGES; from += batchSize) {
+            List<LemmaIndexWriter.PageLemmas> batch = new ArrayList<>();
+            for (int i = from; i < Math.min(from + batchSize, PAGES); i++) {
+                batch.add(new LemmaIndexWriter.PageLemmas(pages.get(i), lemmas.get(i)));
+            }
+            batches.add(batch);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearIndex() {
+        database.clearIndex();
+    }
+
+    @TearDown
+    public void tearDown() {
+        searchIndex.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGES)
+    public int writeAll() {
+        int indexes = 0;
+        for (List<LemmaIndexWriter.PageLemmas> batch : batches) {
+            indexes += writer.writeAll(batch);
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,113 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.config.SitesList;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.services.LemmaIndexWriter;
+import searchengine.services.SearchIndex;
+import searchengine.utils.LemmaPositions;
+import searchengine.utils.LemmaProcessor;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ранжирование в SearchIndex: пересечение списков вхождений и BM25 по одному сайту и по всем сайтам
+ * со слиянием лучших страниц, как в SearchServiceImpl. Индекс строится так же, как при индексации:
+ * страницы пишутся во встроенную базу через LemmaIndexWriter, затем сайты загружаются в SearchIndex.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RankingBenchmark {
+    private static final int SITES = 4;
+    private static final int PAGE_WORDS = 300;
+    private static final int WRITE_BATCH = 100;
+    private static final int QUERIES = 64;
+    private static final int LIMIT = 20;
+
+    @Param({"1000", "5000"})
+    public int pagesPerSite;
+
+    @Param({"1", "2", "3"})
+    public int queryTerms;
+
+    private EmbeddedDatabase database;
+    private SearchIndex searchIndex;
+    private List<List<String>> queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase("ranking");
+        SitesList settings = new SitesList();
+        settings.getSearch().setSegmentDir("");
+        LemmaProcessor lemmaProcessor = new LemmaProcessor(100_000);
+        try {
+            BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.Language.RUSSIAN, 11);
+            LemmaIndexWriter writer = new LemmaIndexWriter(database.jdbcTemplate(),
+                    new SearchIndex(database.jdbcTemplate(), settings));
+            for (int siteId = 1; siteId <= SITES; siteId++) {
+                Site site = EmbeddedDatabase.site(siteId);
+                for (int written = 0; written < pagesPerSite; written += WRITE_BATCH) {
+                    List<String> texts = corpus.texts(Math.min(WRITE_BATCH, pagesPerSite - written), PAGE_WORDS);
+                    List<Page> pages = database.insertPages(site, texts);
+                    List<Map<String, LemmaPositions>> lemmas = lemmaProcessor.collectLemmaPositions(texts);
+                    List<LemmaIndexWriter.PageLemmas> batch = new ArrayList<>();
+                    for (int i = 0; i < pages.size(); i++) {
+                        batch.add(new LemmaIndexWriter.PageLemmas(pages.get(i), lemmas.get(i)));
+                    }
+                    writer.writeAll(batch);
+                }
+            }
+            queries = new ArrayList<>(QUERIES);
+            for (int i = 0; i < QUERIES; i++) {
+                List<String> query = new ArrayList<>();
+                corpus.query(queryTerms).forEach(word -> query.addAll(lemmaProcessor.extractLemmas(word)));
+                queries.add(query);
+            }
+        } finally {
+            lemmaProcessor.shutdown();
+        }
+
+        searchIndex = new SearchIndex(database.jdbcTemplate(), settings);
+        for (int siteId = 1; siteId <= SITES; siteId++) {
+            // первый поиск загружает сайт из базы
+            searchIndex.search(siteId, queries.get(0), new SearchIndex.TopPages(LIMIT));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        searchIndex.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    public List<SearchIndex.ScoredPage> searchSite() {
+        SearchIndex.TopPages top = new SearchIndex.TopPages(LIMIT);
+        searchIndex.search(1, nextQuery(), top);
+        return top.sorted();
+    }
+
+    @Benchmark
+    public List<SearchIndex.ScoredPage> searchAllSites() {
+        List<String> query = nextQuery();
+        List<List<SearchIndex.ScoredPage>> perSite = new ArrayList<>(SITES);
+        for (int siteId = 1; siteId <= SITES; siteId++) {
+            SearchIndex.TopPages top = new SearchIndex.TopPages(LIMIT);
+            searchIndex.search(siteId, query, top);
+            perSite.add(top.sorted());
+        }
+        return SearchIndex.TopPages.merge(perSite, LIMIT);
+    }
+
+    private List<String> nextQuery() {
+        next = next + 1 == QUERIES ? 0 : next + 1;
+        return queries.get(next);
+    }
+}
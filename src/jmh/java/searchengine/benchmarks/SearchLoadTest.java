@@ -0,0 +1,251 @@
+package searchengine.benchmarks;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import searchengine.services.IndexingService;
+import searchengine.services.SearchService;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный тест поиска: приложение поднимается со встроенной базой H2, индексирует воспроизводимые
+ * сайты-симуляторы ({@link SiteSimulator}), затем /api/search (ApiController.search) нагружается по HTTP
+ * запросами из журнала или смесью запросов с частотами по Ципфу. Задержки пишутся в HdrHistogram.
+ * <p>
+ * Запуск: mvn -Pbenchmarks test-compile exec:exec@search-load -Dsearch.args="--qps=200 --concurrency=32"
+ * <p>
+ * Параметры (--имя=значение):
+ * sites, pages, page-words, fan-out, seed, index-timeout-minutes — корпус;
+ * query-log (файл, запрос в строке, повторяется по кругу) или distinct-queries, query-zipf, max-terms — запросы;
+ * qps (0 — закрытый цикл без пауз), concurrency, warmup-seconds, duration-seconds, limit, histogram-file — нагрузка.
+ * <p>
+ * При заданном qps запросы идут по расписанию, и задержка считается от запланированного момента, а не от
+ * фактической отправки: если сервер не успевает, ожидание в очереди тоже попадает в перцентили.
+ */
+public final class SearchLoadTest {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SCHEDULE_SIZE = 1 << 16;
+
+    private SearchLoadTest() {
+    }
+
+    private static final class Worker implements Runnable {
+        private final Histogram histogram = new Histogram(MAX_LATENCY_MICROS, 3);
+        private final Load load;
+        private long requests;
+        private long errors;
+
+        private Worker(Load load) {
+            this.load = load;
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                long ticket = load.tickets.getAndIncrement();
+                long intended = load.periodNanos > 0
+                        ? load.start + ticket * load.periodNanos : Math.max(System.nanoTime(), load.start);
+                if (intended >= load.end) {
+                    return;
+                }
+                sleepUntil(intended);
+                boolean ok = load.send(load.queries.get((int) (ticket % load.queries.size())));
+                long latency = System.nanoTime() - intended;
+                if (intended >= load.measureFrom) {
+                    histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latency), MAX_LATENCY_MICROS));
+                    requests++;
+                    if (!ok) {
+                        errors++;
+                    }
+                }
+            }
+        }
+    }
+
+    private record Load(HttpClient client, String searchUrl, int limit, List<String> queries, long periodNanos,
+                        long start, long measureFrom, long end, AtomicLong tickets) {
+
+        // ошибка — не 200 или ответ с result: false
+        boolean send(String query) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(searchUrl
+                            + URLEncoder.encode(query, StandardCharsets.UTF_8) + "&limit=" + limit))
+                    .timeout(REQUEST_TIMEOUT)
+                    .GET()
+                    .build();
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                return response.statusCode() == 200 && !response.body().contains("\"result\":false");
+            } catch (IOException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BenchmarkApplication.parseOptions(args);
+        int siteCount = BenchmarkApplication.intOption(options, "sites", 1);
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        double qps = Double.parseDouble(options.getOrDefault("qps", "100"));
+        int concurrency = BenchmarkApplication.intOption(options, "concurrency", 16);
+        int warmupSeconds = BenchmarkApplication.intOption(options, "warmup-seconds", 10);
+        int durationSeconds = BenchmarkApplication.intOption(options, "duration-seconds", 60);
+        int limit = BenchmarkApplication.intOption(options, "limit", 10);
+        Path histogramFile = Path.of(options.getOrDefault("histogram-file", "target/search-latency.hgrm"));
+        long indexTimeoutMs = TimeUnit.MINUTES.toMillis(BenchmarkApplication.intOption(options, "index-timeout-minutes", 30));
+
+        List<SiteSimulator> simulators = new ArrayList<>(siteCount);
+        try {
+            for (int i = 0; i < siteCount; i++) {
+                // корпус без задержек и ошибок: сайт нужен только для наполнения индекса
+                simulators.add(new SiteSimulator(new SiteSimulator.Settings(
+                        BenchmarkApplication.intOption(options, "pages", 2_000),
+                        BenchmarkApplication.intOption(options, "fan-out", 8),
+                        0, 0, 0,
+                        BenchmarkApplication.intOption(options, "page-words", 400),
+                        seed + i)));
+            }
+            try (ConfigurableApplicationContext context = BenchmarkApplication.start(simulators, true, List.of(
+                    "--indexing-settings.pipeline.max-requests-per-second=10000",
+                    "--indexing-settings.pipeline.max-connections-per-host=16"))) {
+                IndexingService indexingService = context.getBean(IndexingService.class);
+                long indexingStarted = System.nanoTime();
+                indexingService.startFullIndexing();
+                if (!BenchmarkApplication.awaitIndexing(indexingService, indexTimeoutMs, () -> {
+                })) {
+                    throw new IllegalStateException("Индексация корпуса не завершилась за отведённое время");
+                }
+                long pages = Objects.requireNonNull(context.getBean(JdbcTemplate.class)
+                        .queryForObject("SELECT COUNT(*) FROM page", Long.class));
+                System.out.printf("Корпус: %d сайт(ов), %d страниц, проиндексирован за %.1f с%n", siteCount, pages,
+                        (System.nanoTime() - indexingStarted) / 1e9);
+
+                List<String> queries = options.containsKey("query-log")
+                        ? readQueryLog(Path.of(options.get("query-log")))
+                        : generateQueries(options, seed);
+                String searchUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port")
+                        + "/api/search?query=";
+                HttpClient client = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(5))
+                        .build();
+
+                long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+                long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+                Load load = new Load(client, searchUrl, limit, queries, qps > 0 ? (long) (1e9 / qps) : 0,
+                        start, measureFrom, measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds), new AtomicLong());
+                List<Worker> workers = new ArrayList<>(concurrency);
+                ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+                for (int i = 0; i < concurrency; i++) {
+                    Worker worker = new Worker(load);
+                    workers.add(worker);
+                    pool.submit(worker);
+                }
+                pool.shutdown();
+                if (!pool.awaitTermination(warmupSeconds + durationSeconds + REQUEST_TIMEOUT.toSeconds() + 10,
+                        TimeUnit.SECONDS)) {
+                    pool.shutdownNow();
+                }
+
+                Histogram histogram = new Histogram(MAX_LATENCY_MICROS, 3);
+                long requests = 0;
+                long errors = 0;
+                for (Worker worker : workers) {
+                    histogram.add(worker.histogram);
+                    requests += worker.requests;
+                    errors += worker.errors;
+                }
+                report(histogram, requests, errors, durationSeconds, qps, concurrency,
+                        context.getBean(SearchService.class).getMetrics().get("resultCache"));
+                writeHistogram(histogram, histogramFile);
+                System.out.println("Распределение задержек (мс): " + histogramFile.toAbsolutePath());
+            }
+        } finally {
+            simulators.forEach(SiteSimulator::close);
+        }
+    }
+
+    private static List<String> readQueryLog(Path file) throws IOException {
+        List<String> queries = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("В журнале запросов нет ни одного запроса: " + file);
+        }
+        return queries;
+    }
+
+    /**
+     * distinct-queries разных запросов из 1..max-terms слов корпуса; порядок запросов выбирается по Ципфу,
+     * поэтому популярные запросы повторяются, как в настоящем журнале.
+     */
+    private static List<String> generateQueries(Map<String, String> options, long seed) {
+        int distinct = BenchmarkApplication.intOption(options, "distinct-queries", 500);
+        int maxTerms = BenchmarkApplication.intOption(options, "max-terms", 3);
+        SplittableRandom random = new SplittableRandom(seed);
+        BenchmarkCorpus corpus = new BenchmarkCorpus(BenchmarkCorpus.Language.MIXED, seed);
+        List<String> pool = new ArrayList<>(distinct);
+        for (int i = 0; i < distinct; i++) {
+            pool.add(String.join(" ", corpus.query(1 + random.nextInt(maxTerms))));
+        }
+        ZipfDistribution popularity = new ZipfDistribution(distinct,
+                Double.parseDouble(options.getOrDefault("query-zipf", "1.0")));
+        List<String> schedule = new ArrayList<>(SCHEDULE_SIZE);
+        for (int i = 0; i < SCHEDULE_SIZE; i++) {
+            schedule.add(pool.get(popularity.sample(random)));
+        }
+        return schedule;
+    }
+
+    private static void report(Histogram histogram, long requests, long errors, int durationSeconds, double qps,
+                               int concurrency, Object cacheMetrics) {
+        System.out.println();
+        System.out.printf("Нагрузка: %s, потоков %d, замер %d с%n",
+                qps > 0 ? "цель " + qps + " запросов/с" : "закрытый цикл", concurrency, durationSeconds);
+        System.out.printf("Запросов: %d, пропускная способность: %.1f запросов/с%n",
+                requests, (double) requests / durationSeconds);
+        System.out.printf("Задержка, мс: p50 %.2f, p95 %.2f, p99 %.2f, p99.9 %.2f, max %.2f, среднее %.2f%n",
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(95) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0, histogram.getMean() / 1000.0);
+        System.out.printf("Ошибки: %d (%.2f%%)%n", errors, requests == 0 ? 0.0 : 100.0 * errors / requests);
+        System.out.println("Кэш ответов: " + cacheMetrics);
+    }
+
+    private static void writeHistogram(Histogram histogram, Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), true, StandardCharsets.UTF_8)) {
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Локальный HTTP-сервер с синтетическим сайтом для бенчмарка обхода: главная и страницы /page/1 .. /page/(pages-1).
+ * На каждой странице fanOut ссылок на случайные страницы и ссылка на следующую, чтобы все страницы были достижимы.
+ * Текст, ссылки и ошибка 500 определяются зерном и номером страницы, поэтому сайт одинаков между запусками;
+ * случайна только добавка к задержке ответа.
+ */
+final class SiteSimulator implements AutoCloseable {
+
+    record Settings(int pages, int fanOut, int latencyMs, int latencyJitterMs, double errorRate, int pageWords,
+                    long seed) {
+    }
+
+    private static final String PAGE_PREFIX = "/page/";
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    SiteSimulator(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        // задержка ответа — sleep, поэтому на каждый запрос свой виртуальный поток
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String rootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try (exchange) {
+            int page = pageOf(exchange.getRequestURI().getPath());
+            if (page < 0) {
+                respond(exchange, 404, "<html><body>Not found</body></html>");
+                return;
+            }
+            sleep(settings.latencyMs() + (settings.latencyJitterMs() > 0
+                    ? ThreadLocalRandom.current().nextInt(settings.latencyJitterMs() + 1) : 0));
+            SplittableRandom random = new SplittableRandom(settings.seed() * 1_000_003 + page);
+            if (page > 0 && random.nextDouble() < settings.errorRate()) {
+                errors.increment();
+                respond(exchange, 500, "<html><body>Internal error</body></html>");
+                return;
+            }
+            respond(exchange, 200, render(page, random));
+        }
+    }
+
+    private String render(int page, SplittableRandom random) {
+        String text = new BenchmarkCorpus(BenchmarkCorpus.Language.MIXED, random.nextLong()).text(settings.pageWords());
+        StringBuilder html = new StringBuilder(text.length() + settings.fanOut() * 40 + 200);
+        html.append("<html><head><title>Страница ").append(page).append("</title></head><body><p>")
+                .append(text).append("</p><ul>");
+        if (page + 1 < settings.pages()) {
+            link(html, page + 1);
+        }
+        for (int i = 0; i < settings.fanOut(); i++) {
+            link(html, random.nextInt(settings.pages()));
+        }
+        return html.append("</ul></body></html>").toString();
+    }
+
+    private static void link(StringBuilder html, int page) {
+        html.append("<li><a href=\"").append(page == 0 ? "/" : PAGE_PREFIX + page).append("\">Страница ")
+                .append(page).append("</a></li>");
+    }
+
+    private int pageOf(String path) {
+        if (path.isEmpty() || path.equals("/")) {
+            return 0;
+        }
+        if (!path.startsWith(PAGE_PREFIX)) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring(PAGE_PREFIX.length()));
+            return page > 0 && page < settings.pages() ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(int millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.services.SnippetBuilder;
+import searchengine.utils.LemmaPositions;
+import searchengine.utils.LemmaProcessor;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сниппеты для выдачи: по сохранённым позициям лемм (как при поиске по проиндексированным страницам)
+ * и разбором текста (страницы без позиций). Запросы чередуются, чтобы не измерять одну и ту же страницу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SnippetBenchmark {
+    private static final int PAGES = 64;
+
+    @Param({"RUSSIAN", "ENGLISH"})
+    public BenchmarkCorpus.Language language;
+
+    @Param({"500", "5000"})
+    public int pageWords;
+
+    @Param({"1", "3"})
+    public int queryTerms;
+
+    private LemmaProcessor lemmaProcessor;
+    private SnippetBuilder snippetBuilder;
+    private List<String> texts;
+    private List<List<String>> queries;
+    private List<Map<String, LemmaPositions>> positions;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(language, 7);
+        lemmaProcessor = new LemmaProcessor(100_000);
+        snippetBuilder = new SnippetBuilder(lemmaProcessor);
+        texts = corpus.texts(PAGES, pageWords);
+        queries = new ArrayList<>(PAGES);
+        positions = new ArrayList<>(PAGES);
+        for (String text : texts) {
+            List<String> query = new ArrayList<>();
+            corpus.query(queryTerms).forEach(word -> query.addAll(lemmaProcessor.extractLemmas(word)));
+            queries.add(query);
+            // позиции в том виде, в каком их читает LemmaPositionStore: по ключу леммы, только леммы запроса
+            Map<String, LemmaPositions> all = lemmaProcessor.collectLemmaPositions(text);
+            Map<String, LemmaPositions> stored = new HashMap<>();
+            for (String lemma : query) {
+                LemmaPositions lemmaPositions = all.get(lemma);
+                if (lemmaPositions != null) {
+                    stored.merge(lemma.replace('ё', 'е').replace('й', 'и'), lemmaPositions, LemmaPositions::merge);
+                }
+            }
+            positions.add(stored);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        lemmaProcessor.shutdown();
+    }
+
+    @Benchmark
+    public String storedPositions() {
+        int page = nextPage();
+        return snippetBuilder.build(texts.get(page), queries.get(page), positions.get(page));
+    }
+
+    @Benchmark
+    public String scannedText() {
+        int page = nextPage();
+        return snippetBuilder.build(texts.get(page), queries.get(page));
+    }
+
+    private int nextPage() {
+        next = next + 1 == PAGES ? 0 : next + 1;
+        return next;
+    }
+}
@@ -0,0 +1,104 @@
+package searchengine.benchmarks;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Обёртка источника данных приложения, считающая обращения к базе: выполненные запросы (execute*),
+ * пакеты (executeBatch) и строки в пакетах (addBatch). Подключается как BeanPostProcessor.
+ */
+final class StatementCounter implements BeanPostProcessor {
+
+    record Counts(long statements, long batches, long batchedRows) {
+
+        Counts minus(Counts start) {
+            return new Counts(statements - start.statements, batches - start.batches, batchedRows - start.batchedRows);
+        }
+
+        // пакет — одно обращение к базе
+        long roundTrips() {
+            return statements + batches;
+        }
+    }
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRows = new LongAdder();
+
+    Counts counts() {
+        return new Counts(statements.sum(), batches.sum(), batchedRows.sum());
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource dataSource && !(bean instanceof CountingDataSource)
+                ? new CountingDataSource(dataSource) : bean;
+    }
+
+    private final class CountingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+        private CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrapConnection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrapConnection(super.getConnection(username, password));
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (getTargetDataSource() instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private Connection wrapConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    return result instanceof Statement statement ? wrapStatement(statement, method.getReturnType()) : result;
+                });
+    }
+
+    private Object wrapStatement(Statement statement, Class<?> type) {
+        Class<?> statementType = type == CallableStatement.class || type == PreparedStatement.class
+                ? type : Statement.class;
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{statementType},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "execute", "executeQuery", "executeUpdate", "executeLargeUpdate" -> statements.increment();
+                        case "executeBatch", "executeLargeBatch" -> batches.increment();
+                        case "addBatch" -> batchedRows.increment();
+                        default -> {
+                        }
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -8,4 +8,6 @@ import lombok.Setter;
 public class ConfigSite {
     private String url;
     private String name;
+    private double maxRequestsPerSecond;
+    private int maxConnections;
 }
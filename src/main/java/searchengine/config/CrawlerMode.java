@@ -0,0 +1,7 @@
+package searchengine.config;
+
+public enum CrawlerMode {
+    FORK_JOIN,
+    PIPELINE,
+    VIRTUAL_THREADS
+}
@@ -0,0 +1,32 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.utils.SeenUrlSet;
+
+@Setter
+@Getter
+public class PipelineSettings {
+    private int fetchThreads = 8;
+    private int maxConnectionsPerHost = 4;
+    private double maxRequestsPerSecond = 2.0;
+    private int parseThreads = 2;
+    private int lemmatizeThreads = 0;
+    private int lemmatizeBatchSize = 8;
+    private int persistThreads = 1;
+    private int queueCapacity = 64;
+    private int persistBatchSize = 20;
+    private int metricsIntervalSeconds = 10;
+    private int checkpointIntervalSeconds = 30;
+    private SeenUrlSet.Mode seenUrlMode = SeenUrlSet.Mode.EXACT;
+    private long bloomExpectedUrls = 1_000_000;
+    private double bloomFalsePositiveRate = 0.001;
+
+    public SeenUrlSet newSeenUrlSet() {
+        return new SeenUrlSet(seenUrlMode, bloomExpectedUrls, bloomFalsePositiveRate);
+    }
+
+    public int getEffectiveLemmatizeThreads() {
+        return lemmatizeThreads > 0 ? lemmatizeThreads : 2;
+    }
+}
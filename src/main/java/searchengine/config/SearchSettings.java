@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+public class SearchSettings {
+    private boolean offHeapPostings = false;
+    private String segmentDir = "index-segments";
+    private double maxLemmaPageShare = 0.8;
+    private double bm25K1 = 1.2;
+    private double bm25B = 0.75;
+    private long resultCacheBytes = 32L * 1024 * 1024;
+    private double proximityWeight = 0.5;
+    private int threads = 0;
+    private long siteTimeoutMs = 2000;
+}
@@ -13,4 +13,9 @@ import java.util.List;
 @ConfigurationProperties(prefix = "indexing-settings")
 public class SitesList {
     private List<ConfigSite> sites;
+    private int lemmaCacheSize = 100_000;
+    private int lemmatizerThreads = 0;
+    private CrawlerMode crawlerMode = CrawlerMode.PIPELINE;
+    private PipelineSettings pipeline = new PipelineSettings();
+    private SearchSettings search = new SearchSettings();
 }
@@ -54,8 +54,25 @@ public class ApiController {
         return ResponseEntity.ok(statistics);
     }
 
+    @GetMapping("/indexingMetrics")
+    public ResponseEntity<Map<String, Object>> indexingMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("result", true);
+        response.put("pipelines", indexingService.getPipelineMetrics());
+        response.put("finishedPipelines", indexingService.getFinishedPipelineMetrics());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/searchMetrics")
+    public ResponseEntity<Map<String, Object>> searchMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("result", true);
+        response.putAll(searchService.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/startIndexing")
-    public ResponseEntity<Map<String, Object>> startIndexing() {
+    public ResponseEntity<Map<String, Object>> startIndexing(@RequestParam(defaultValue = "false") boolean incremental) {
         if (indexingInProgress) {
             Map<String, Object> response = new HashMap<>();
             response.put("result", false);
@@ -68,7 +85,11 @@ public class ApiController {
         try {
             CompletableFuture.runAsync(() -> {
                 try {
-                    indexingService.startFullIndexing();
+                    if (incremental) {
+                        indexingService.startIncrementalIndexing();
+                    } else {
+                        indexingService.startFullIndexing();
+                    }
                 } catch (Exception e) {
                     System.err.println("Ошибка при индексации: " + e.getMessage());
                 } finally {
@@ -89,6 +110,33 @@ public class ApiController {
         }
     }
 
+    @GetMapping("/resumeIndexing")
+    public ResponseEntity<Map<String, Object>> resumeIndexing() {
+        if (indexingInProgress) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("result", false);
+            response.put("error", "Индексация уже запущена");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+
+        indexingInProgress = true;
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                indexingService.resumeIndexing();
+            } catch (Exception e) {
+                logger.error("Ошибка при продолжении индексации: {}", e.getMessage(), e);
+            } finally {
+                indexingInProgress = false;
+            }
+        });
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("result", true);
+        response.put("message", "Индексация продолжена с сохранённого места.");
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/stopIndexing")
     public ResponseEntity<Map<String, Object>> stopIndexing() {
         try {
@@ -13,6 +13,8 @@ public class SearchResponse {
     private int count;
     private List<SearchResult> data;
     private String error;
+    // часть сайтов не успела ответить за search.site-timeout-ms
+    private boolean partial;
 
     public SearchResponse(boolean result, int count, List<SearchResult> data) {
         this.result = result;
@@ -21,6 +23,11 @@ public class SearchResponse {
         this.error = null;
     }
 
+    public SearchResponse(boolean result, int count, List<SearchResult> data, boolean partial) {
+        this(result, count, data);
+        this.partial = partial;
+    }
+
     public SearchResponse(String error) {
         this.result = false;
         this.count = 0;
@@ -0,0 +1,37 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+
+@Entity
+@Table(
+        name = "crawl_frontier",
+        uniqueConstraints = {@UniqueConstraint(name = "idx_frontier_site_url", columnNames = {"site_id", "url_hash"})}
+)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "site")
+public class CrawlUrl {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "site_id", nullable = false)
+    private Site site;
+
+    @Column(name = "url_hash", nullable = false)
+    private long urlHash;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String url;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private CrawlUrlStatus status;
+}
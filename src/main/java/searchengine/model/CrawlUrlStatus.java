@@ -0,0 +1,6 @@
+package searchengine.model;
+
+public enum CrawlUrlStatus {
+    PENDING,
+    VISITED
+}
@@ -25,6 +25,10 @@ public class Index {
     @JoinColumn(name = "lemma_id", nullable = false)
     private Lemma lemma;
 
-    @Column(name = "'rank'", nullable = false)
+    @Column(name = "`rank`", nullable = false)
     private Float rank;
+
+    // позиции леммы на странице в формате LemmaPositions
+    @Column(columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
 }
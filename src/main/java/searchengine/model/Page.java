@@ -38,6 +38,19 @@ public class Page {
     @Column(length = 500)
     private String contentType;
 
+    @Column(length = 255)
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;
+
+    @Column(name = "content_hash")
+    private Long contentHash;
+
+    // число лемматизированных слов страницы — длина документа для BM25
+    @Column(name = "token_count")
+    private Integer tokenCount;
+
     @Transient
     private String title;
 
@@ -14,7 +14,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 @Table(
         name = "site",
         indexes = {@jakarta.persistence.Index(name = "idx_url", columnList = "url")},
-        uniqueConstraints = {@UniqueConstraint(columnNames = "url")}
+        uniqueConstraints = {@UniqueConstraint(name = "uk_site_url_generation", columnNames = {"url", "generation"})}
 )
 @Data
 @NoArgsConstructor
@@ -35,9 +35,16 @@ public class Site {
     @Column(columnDefinition = "TEXT")
     private String lastError;
 
-    @Column(length = 500, nullable = false, unique = true)
+    @Column(length = 500, nullable = false)
     private String url;
 
+    // Полная переиндексация строит новое поколение сайта, поиск видит только активное
+    @Column(nullable = false)
+    private int generation;
+
+    @Column(nullable = false, columnDefinition = "BOOLEAN NOT NULL DEFAULT TRUE")
+    private boolean active = true;
+
     @Column(length = 500, nullable = false)
     private String name;
 
@@ -23,11 +23,24 @@ public interface PageRepository extends JpaRepository<Page, Integer> {
 
     int countBySite(Site site);
 
-    @Query("SELECT p FROM Page p WHERE p.id IN " +
+    interface PageState {
+        Integer getId();
+        String getPath();
+        int getCode();
+        String getEtag();
+        String getLastModified();
+        Long getContentHash();
+    }
+
+    @Query("SELECT p.id AS id, p.path AS path, p.code AS code, p.etag AS etag, " +
+            "p.lastModified AS lastModified, p.contentHash AS contentHash FROM Page p WHERE p.site.id = :siteId")
+    List<PageState> findPageStatesBySiteId(@Param("siteId") int siteId);
+
+    @Query("SELECT p FROM Page p WHERE p.site.active = true AND p.id IN " +
             "(SELECT i.page.id FROM Index i WHERE i.lemma.lemma IN :lemmas)")
     List<Page> findPagesByLemmas(@Param("lemmas") List<String> lemmas);
 
-    @Query("SELECT p FROM Page p WHERE p.site.url = :site AND p.id IN " +
+    @Query("SELECT p FROM Page p WHERE p.site.url = :site AND p.site.active = true AND p.id IN " +
             "(SELECT i.page.id FROM Index i WHERE i.lemma.lemma IN :lemmas)")
     List<Page> findPagesByLemmas(@Param("lemmas") List<String> lemmas, @Param("site") String site);
 
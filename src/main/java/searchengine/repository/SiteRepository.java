@@ -8,12 +8,21 @@ import searchengine.model.IndexingStatus;
 import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.Optional;
 
 @Repository
-public interface SiteRepository extends JpaRepository<Site,List> {
+public interface SiteRepository extends JpaRepository<Site,Integer> {
 
-    Site findByUrl(String url);
+    @Query("SELECT s FROM Site s WHERE s.url = :url AND s.active = true")
+    Site findByUrl(@Param("url") String url);
+
+    List<Site> findAllByUrl(String url);
+
+    Site findFirstByUrlOrderByGenerationDesc(String url);
+
+    List<Site> findAllByActiveTrue();
 
     @Modifying
     @Transactional
@@ -0,0 +1,77 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.CrawlUrlStatus;
+import searchengine.utils.Fingerprints;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Хранение фронтира обхода в таблице crawl_frontier: очередь ожидающих и множество посещённых URL сайта.
+ * Позволяет продолжить остановленную или прерванную перезапуском индексацию без повторной загрузки страниц.
+ */
+@Component
+public class CrawlFrontierStore {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlFrontierStore.class);
+
+    private static final String INSERT_PENDING =
+            "INSERT IGNORE INTO crawl_frontier (site_id, url_hash, url, status) VALUES (?, ?, ?, 'PENDING')";
+    private static final String UPSERT_VISITED =
+            "INSERT INTO crawl_frontier (site_id, url_hash, url, status) VALUES (?, ?, ?, 'VISITED') " +
+                    "ON DUPLICATE KEY UPDATE status = 'VISITED'";
+    private static final String SELECT_BY_STATUS = "SELECT url FROM crawl_frontier WHERE site_id = ? AND status = ?";
+    private static final String COUNT_PENDING = "SELECT COUNT(*) FROM crawl_frontier WHERE site_id = ? AND status = 'PENDING'";
+    private static final String DELETE_BY_SITE = "DELETE FROM crawl_frontier WHERE site_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CrawlFrontierStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Сохраняет изменения фронтира. Ожидающие URL пишутся раньше посещённых, поэтому в базе не бывает
+     * посещённой страницы, ссылки которой ещё не попали в очередь.
+     */
+    @Transactional
+    public void checkpoint(int siteId, Collection<String> pending, Collection<String> visited) {
+        if (!pending.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_PENDING, toRows(siteId, pending));
+        }
+        if (!visited.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_VISITED, toRows(siteId, visited));
+        }
+        logger.debug("Контрольная точка сайта {}: +{} в очереди, +{} посещено", siteId, pending.size(), visited.size());
+    }
+
+    public List<String> loadPending(int siteId) {
+        return jdbcTemplate.queryForList(SELECT_BY_STATUS, String.class, siteId, CrawlUrlStatus.PENDING.name());
+    }
+
+    public List<String> loadVisited(int siteId) {
+        return jdbcTemplate.queryForList(SELECT_BY_STATUS, String.class, siteId, CrawlUrlStatus.VISITED.name());
+    }
+
+    public boolean hasPending(int siteId) {
+        Integer count = jdbcTemplate.queryForObject(COUNT_PENDING, Integer.class, siteId);
+        return count != null && count > 0;
+    }
+
+    public int clear(int siteId) {
+        return jdbcTemplate.update(DELETE_BY_SITE, siteId);
+    }
+
+    private static List<Object[]> toRows(int siteId, Collection<String> urls) {
+        List<Object[]> rows = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            rows.add(new Object[]{siteId, Fingerprints.of(url), url});
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,187 @@
+package searchengine.services;
+
+import searchengine.config.ConfigSite;
+import searchengine.config.PipelineSettings;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик обхода с ограничением нагрузки на каждый хост: не чаще maxRequestsPerSecond запросов
+ * и не больше maxConnections одновременных соединений. Вместо случайных пауз перед запросом
+ * воркеры получают только те URL, хост которых уже готов принять следующий запрос.
+ */
+public class CrawlScheduler {
+    private static final long IDLE_WAIT_MS = 200;
+
+    private final long intervalNanos;
+    private final int maxConnections;
+    private final Map<String, HostState> hosts = new HashMap<>();
+    private final DelayQueue<HostState> readyHosts = new DelayQueue<>();
+    private int pendingCount = 0;
+
+    public CrawlScheduler(double maxRequestsPerSecond, int maxConnections) {
+        this.intervalNanos = maxRequestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond) : 0;
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    public static CrawlScheduler forSite(ConfigSite configSite, PipelineSettings settings) {
+        double rps = configSite.getMaxRequestsPerSecond() > 0
+                ? configSite.getMaxRequestsPerSecond() : settings.getMaxRequestsPerSecond();
+        int connections = configSite.getMaxConnections() > 0
+                ? configSite.getMaxConnections() : settings.getMaxConnectionsPerHost();
+        return new CrawlScheduler(rps, connections);
+    }
+
+    public synchronized void submit(String url) {
+        HostState host = hostFor(url);
+        host.pending.addLast(url);
+        pendingCount++;
+        scheduleIfReady(host);
+    }
+
+    /**
+     * Возвращает URL, хост которого готов к запросу, или null по истечении таймаута.
+     * После загрузки вызывающий обязан вызвать {@link #release(String)}.
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            HostState host = readyHosts.poll(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            if (host == null) {
+                return null;
+            }
+            synchronized (this) {
+                host.queued = false;
+                String url = host.pending.pollFirst();
+                if (url == null) {
+                    continue;
+                }
+                pendingCount--;
+                host.active++;
+                host.nextFetchAt = System.nanoTime() + intervalNanos;
+                scheduleIfReady(host);
+                return url;
+            }
+        }
+    }
+
+    /**
+     * Блокирующее получение разрешения на запрос для воркеров, которые сами держат свой URL
+     * (рекурсивный обход PageCrawler, индексация отдельной страницы). Ожидание идёт через
+     * ForkJoinPool.managedBlock: воркер общего пула PageCrawler, ждущий медленный хост, не отнимает
+     * у пула параллелизм — пул запускает компенсирующий поток. Вне ForkJoinPool это обычное ожидание.
+     */
+    public void acquire(String url) throws InterruptedException {
+        HostPermit permit;
+        synchronized (this) {
+            permit = new HostPermit(hostFor(url));
+        }
+        ForkJoinPool.managedBlock(permit);
+    }
+
+    public synchronized void release(String url) {
+        HostState host = hostFor(url);
+        if (host.active > 0) {
+            host.active--;
+        }
+        scheduleIfReady(host);
+        notifyAll();
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("pendingUrls", pendingCount);
+        for (HostState host : hosts.values()) {
+            metrics.put("activeConnections:" + host.name, host.active);
+            metrics.put("pendingUrls:" + host.name, host.pending.size());
+        }
+        return metrics;
+    }
+
+    private void scheduleIfReady(HostState host) {
+        if (!host.queued && !host.pending.isEmpty() && host.active < maxConnections) {
+            host.queued = true;
+            readyHosts.offer(host);
+        }
+    }
+
+    private synchronized boolean tryAcquire(HostState host) {
+        if (host.active >= maxConnections || host.nextFetchAt - System.nanoTime() > 0) {
+            return false;
+        }
+        host.active++;
+        host.nextFetchAt = System.nanoTime() + intervalNanos;
+        return true;
+    }
+
+    private HostState hostFor(String url) {
+        return hosts.computeIfAbsent(hostOf(url), HostState::new);
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private final class HostPermit implements ForkJoinPool.ManagedBlocker {
+        private final HostState host;
+        private boolean acquired = false;
+
+        HostPermit(HostState host) {
+            this.host = host;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return acquired || (acquired = tryAcquire(host));
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            synchronized (CrawlScheduler.this) {
+                if (isReleasable()) {
+                    return true;
+                }
+                long wait = host.nextFetchAt - System.nanoTime();
+                CrawlScheduler.this.wait(wait > 0 ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)) : IDLE_WAIT_MS);
+                return isReleasable();
+            }
+        }
+    }
+
+    private static class HostState implements Delayed {
+        private final String name;
+        private final Deque<String> pending = new ArrayDeque<>();
+        private long nextFetchAt = System.nanoTime();
+        private int active = 0;
+        private boolean queued = false;
+
+        HostState(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextFetchAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,653 @@
+package searchengine.services;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.PipelineSettings;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repository.PageRepository;
+import searchengine.utils.Fingerprints;
+import searchengine.utils.LatencyHistogram;
+import searchengine.utils.LemmaPositions;
+import searchengine.utils.LemmaProcessor;
+import searchengine.utils.SeenUrlSet;
+import searchengine.utils.UrlNormalizer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Конвейер индексации сайта: загрузка -> разбор и извлечение ссылок -> лемматизация -> пакетное сохранение.
+ * Стадии работают в собственных пулах и связаны ограниченными очередями, поэтому медленная стадия
+ * притормаживает предыдущие, а не накапливает страницы в памяти.
+ */
+public class IndexingPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(IndexingPipeline.class);
+    private static final long POLL_TIMEOUT_MS = 200;
+
+    // started — System.nanoTime() начала загрузки, по нему считается задержка страницы до сохранения
+    private record FetchedPage(String url, String path, Connection.Response response, long started) {}
+
+    private record ParsedPage(String url, Page page, String text, long started) {}
+
+    private record PersistTask(String url, Page page, Map<String, LemmaPositions> lemmas, long started) {}
+
+    private final Site site;
+    private final List<String> allowedSiteUrls;
+    private final PipelineSettings settings;
+    private final CrawlScheduler scheduler;
+    private final boolean virtualThreads;
+    private final PageRepository pageRepository;
+    private final PagePathIndex pagePathIndex;
+    private final LemmaIndexWriter lemmaIndexWriter;
+    private final LemmaProcessor lemmaProcessor;
+    private final IndexingService indexingService;
+    private final CrawlFrontierStore frontierStore;
+    private final TransactionTemplate transactionTemplate;
+
+    private final BlockingQueue<FetchedPage> parseQueue;
+    private final BlockingQueue<ParsedPage> lemmatizeQueue;
+    private final BlockingQueue<PersistTask> persistQueue;
+
+    private final SeenUrlSet seenUrls;
+    private final Map<String, PageRepository.PageState> knownPages = new ConcurrentHashMap<>();
+    private volatile boolean incremental = false;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean stopped = false;
+
+    private final Queue<String> pendingDelta = new ConcurrentLinkedQueue<>();
+    private final Queue<String> visitedDelta = new ConcurrentLinkedQueue<>();
+    private final Queue<Page> validatorDelta = new ConcurrentLinkedQueue<>();
+    private final Object checkpointLock = new Object();
+
+    private final LongAdder fetchedCount = new LongAdder();
+    private final LongAdder parsedCount = new LongAdder();
+    private final LongAdder lemmatizedCount = new LongAdder();
+    private final LongAdder persistedCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder unchangedCount = new LongAdder();
+    private final LatencyHistogram pageLatency = new LatencyHistogram();
+
+    public IndexingPipeline(Site site, List<String> allowedSiteUrls, PipelineSettings settings,
+                            CrawlScheduler scheduler, boolean virtualThreads,
+                            PageRepository pageRepository, PagePathIndex pagePathIndex, LemmaIndexWriter lemmaIndexWriter,
+                            LemmaProcessor lemmaProcessor, IndexingService indexingService,
+                            CrawlFrontierStore frontierStore, TransactionTemplate transactionTemplate) {
+        this.site = site;
+        this.allowedSiteUrls = allowedSiteUrls;
+        this.settings = settings;
+        this.scheduler = scheduler;
+        this.virtualThreads = virtualThreads;
+        this.pageRepository = pageRepository;
+        this.pagePathIndex = pagePathIndex;
+        this.lemmaIndexWriter = lemmaIndexWriter;
+        this.lemmaProcessor = lemmaProcessor;
+        this.indexingService = indexingService;
+        this.frontierStore = frontierStore;
+        this.transactionTemplate = transactionTemplate;
+        this.seenUrls = settings.newSeenUrlSet();
+        this.parseQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.lemmatizeQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.persistQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+    }
+
+    /**
+     * Полный обход сайта с начальной страницы. Возвращает true, если обход завершился, а не был остановлен.
+     */
+    public boolean run(String startUrl) {
+        return execute(() -> enqueue(startUrl));
+    }
+
+    /**
+     * Продолжение обхода по сохранённому фронтиру: посещённые URL не загружаются повторно,
+     * ожидающие ставятся в очередь планировщика.
+     */
+    public boolean resume(Collection<String> visited, Collection<String> pending) {
+        logger.info("Продолжение обхода {}: посещено {}, в очереди {}", site.getUrl(), visited.size(), pending.size());
+        return execute(() -> {
+            seenUrls.addAll(visited);
+            for (String url : pending) {
+                if (seenUrls.add(url) && !pagePathIndex.contains(site.getId(), pathOf(url))) {
+                    submit(url);
+                }
+            }
+        });
+    }
+
+    /**
+     * Инкрементальная переиндексация: известные страницы запрашиваются с If-None-Match / If-Modified-Since,
+     * леммы и индексы перезаписываются только для страниц с изменившимся содержимым.
+     */
+    public boolean runIncremental(String startUrl, List<PageRepository.PageState> pages) {
+        incremental = true;
+        List<String> knownUrls = new ArrayList<>();
+        String root = site.getUrl().endsWith("/") ? site.getUrl().substring(0, site.getUrl().length() - 1) : site.getUrl();
+        for (PageRepository.PageState state : pages) {
+            if (state.getPath() != null && state.getPath().startsWith("/")) {
+                knownPages.put(state.getPath(), state);
+                knownUrls.add(root + state.getPath());
+            }
+        }
+        logger.info("Инкрементальный обход {}: известно {} страниц", site.getUrl(), knownPages.size());
+        return execute(() -> {
+            enqueue(startUrl);
+            knownUrls.forEach(this::enqueue);
+        });
+    }
+
+    private boolean execute(Runnable seed) {
+        ExecutorService virtualFetchers = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        ExecutorService fetchStage = virtualThreads
+                ? startStage("fetch-dispatch", 1, () -> runVirtualFetchDispatcher(virtualFetchers))
+                : startStage("fetch", settings.getFetchThreads(), this::runFetchStage);
+        List<ExecutorService> stages = new ArrayList<>(List.of(
+                fetchStage,
+                startStage("parse", settings.getParseThreads(), () -> runStage(parseQueue, this::parse, FetchedPage::url)),
+                startStage("lemmatize", settings.getEffectiveLemmatizeThreads(), this::runLemmatizeStage),
+                startStage("persist", settings.getPersistThreads(), this::runPersistStage)
+        ));
+        if (virtualFetchers != null) {
+            stages.add(1, virtualFetchers);
+        }
+
+        boolean completed = false;
+        seed.run();
+        if (inFlight.get() == 0) {
+            finished.countDown();
+        }
+        try {
+            long lastCheckpoint = System.nanoTime();
+            while (!finished.await(settings.getMetricsIntervalSeconds(), TimeUnit.SECONDS)) {
+                if (!isRunning()) {
+                    logger.info("Конвейер сайта {} остановлен до завершения обхода.", site.getUrl());
+                    break;
+                }
+                logger.info("Конвейер {}: {}", site.getUrl(), getMetrics());
+                if (System.nanoTime() - lastCheckpoint >= TimeUnit.SECONDS.toNanos(settings.getCheckpointIntervalSeconds())) {
+                    checkpoint();
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+            completed = inFlight.get() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            for (ExecutorService stage : stages) {
+                stage.shutdown();
+            }
+            for (ExecutorService stage : stages) {
+                awaitStage(stage);
+            }
+            checkpoint();
+            logger.info("Конвейер {} завершён: {}", site.getUrl(), getMetrics());
+        }
+        return completed;
+    }
+
+    /**
+     * Сначала забираются посещённые URL, затем ожидающие: ссылки страницы попадают в очередь
+     * до того, как сама страница отмечается посещённой, поэтому все её ссылки войдут в ту же точку.
+     */
+    private void checkpoint() {
+        synchronized (checkpointLock) {
+            List<Page> revalidated = drain(validatorDelta);
+            if (!revalidated.isEmpty()) {
+                try {
+                    lemmaIndexWriter.updateValidators(revalidated);
+                } catch (Exception e) {
+                    validatorDelta.addAll(revalidated);
+                    logger.error("Ошибка сохранения ETag/Last-Modified страниц сайта {}: {}", site.getUrl(), e.getMessage());
+                }
+            }
+            List<String> visited = drain(visitedDelta);
+            List<String> pending = drain(pendingDelta);
+            if (visited.isEmpty() && pending.isEmpty()) {
+                return;
+            }
+            try {
+                frontierStore.checkpoint(site.getId(), pending, visited);
+            } catch (Exception e) {
+                pendingDelta.addAll(pending);
+                visitedDelta.addAll(visited);
+                logger.error("Ошибка сохранения контрольной точки сайта {}: {}", site.getUrl(), e.getMessage());
+            }
+        }
+    }
+
+    private static <T> List<T> drain(Queue<T> queue) {
+        List<T> items = new ArrayList<>();
+        T item;
+        while ((item = queue.poll()) != null) {
+            items.add(item);
+        }
+        return items;
+    }
+
+    public void stop() {
+        stopped = true;
+        finished.countDown();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("frontierQueue", scheduler.getPendingCount());
+        metrics.put("parseQueue", parseQueue.size());
+        metrics.put("lemmatizeQueue", lemmatizeQueue.size());
+        metrics.put("persistQueue", persistQueue.size());
+        metrics.put("inFlight", inFlight.get());
+        metrics.putAll(scheduler.getMetrics());
+        metrics.putAll(seenUrls.getMetrics());
+        metrics.put("fetched", fetchedCount.sum());
+        metrics.put("parsed", parsedCount.sum());
+        metrics.put("lemmatized", lemmatizedCount.sum());
+        metrics.put("persisted", persistedCount.sum());
+        metrics.put("errors", errorCount.sum());
+        metrics.put("unchanged", unchangedCount.sum());
+        // от начала загрузки до сохранения страницы
+        metrics.put("pageLatencyP50Ms", pageLatency.percentileMs(50));
+        metrics.put("pageLatencyP99Ms", pageLatency.percentileMs(99));
+        metrics.put("pageLatencyMaxMs", pageLatency.maxMs());
+        return metrics;
+    }
+
+    private void runFetchStage() {
+        while (isRunning() && !Thread.currentThread().isInterrupted()) {
+            String url = nextReadyUrl();
+            if (url != null) {
+                fetchSafely(url);
+            }
+        }
+    }
+
+    /**
+     * Режим виртуальных потоков: каждая загрузка выполняется в отдельном виртуальном потоке.
+     * Число одновременных соединений ограничивает планировщик хоста, а не размер пула.
+     */
+    private void runVirtualFetchDispatcher(ExecutorService virtualFetchers) {
+        while (isRunning() && !Thread.currentThread().isInterrupted()) {
+            String url = nextReadyUrl();
+            if (url == null) {
+                continue;
+            }
+            try {
+                virtualFetchers.submit(() -> fetchSafely(url));
+            } catch (RejectedExecutionException e) {
+                scheduler.release(url);
+                complete();
+            }
+        }
+    }
+
+    private String nextReadyUrl() {
+        try {
+            return scheduler.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void fetchSafely(String url) {
+        try {
+            fetch(url);
+        } catch (Exception e) {
+            errorCount.increment();
+            logger.error("Ошибка обработки {} на конвейере: {}", url, e.getMessage(), e);
+            complete();
+        }
+    }
+
+    private void fetch(String url) {
+        long started = System.nanoTime();
+        String path;
+        Connection.Response response;
+        try {
+            path = pathOf(url);
+            logger.info("Обработка URL: {}", url);
+            Connection connection = Jsoup.connect(url)
+                    .userAgent(PageCrawler.USER_AGENT)
+                    .referrer(PageCrawler.REFERRER)
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true);
+            PageRepository.PageState known = knownPages.get(path);
+            if (known != null && known.getCode() == 200) {
+                if (known.getEtag() != null) {
+                    connection.header("If-None-Match", known.getEtag());
+                }
+                if (known.getLastModified() != null) {
+                    connection.header("If-Modified-Since", known.getLastModified());
+                }
+            }
+            response = connection.execute();
+            response.bufferUp();
+        } catch (IOException e) {
+            logger.warn("Ошибка обработки URL {}: {}", url, e.getMessage());
+            errorCount.increment();
+            if (knownPages.containsKey(pathOf(url))) {
+                // временная ошибка сети не должна стирать индекс ранее загруженной страницы
+                visitedDelta.add(url);
+                complete();
+                return;
+            }
+            handOff(persistQueue, new PersistTask(url, newPage(pathOf(url), 0, "Ошибка обработки: " + e.getMessage()), Map.of(), started));
+            return;
+        } finally {
+            scheduler.release(url);
+        }
+
+        fetchedCount.increment();
+        if (response.statusCode() == 304) {
+            logger.debug("Страница не изменилась (304): {}", url);
+            unchangedCount.increment();
+            visitedDelta.add(url);
+            complete();
+            return;
+        }
+        handOff(parseQueue, new FetchedPage(url, path, response, started));
+    }
+
+    private void parse(FetchedPage fetched) {
+        Connection.Response response = fetched.response();
+        int statusCode = response.statusCode();
+        String contentType = response.contentType();
+
+        if (statusCode >= 400) {
+            logger.warn("Ошибка {} при доступе к URL: {}. Страница не будет индексироваться.", statusCode, fetched.url());
+            handOff(persistQueue, new PersistTask(fetched.url(), newPage(fetched.path(), statusCode, "HTTP error: " + statusCode), Map.of(),
+                    fetched.started()));
+            return;
+        }
+
+        if (contentType == null || !contentType.contains("text/html")) {
+            logger.info("Пропускаем контент типа {}: {}", contentType, fetched.url());
+            visitedDelta.add(fetched.url());
+            complete();
+            return;
+        }
+
+        Document document;
+        try {
+            document = response.parse();
+        } catch (IOException e) {
+            logger.warn("Ошибка разбора страницы {}: {}", fetched.url(), e.getMessage());
+            errorCount.increment();
+            visitedDelta.add(fetched.url());
+            complete();
+            return;
+        }
+
+        for (Element link : document.select("a[href]")) {
+            String childUrl = link.absUrl("href");
+            if (isAllowed(childUrl)) {
+                enqueue(childUrl);
+            }
+        }
+
+        String text = document.text();
+        long contentHash = Fingerprints.of(text);
+        parsedCount.increment();
+
+        PageRepository.PageState known = knownPages.get(fetched.path());
+        if (known != null && known.getCode() == statusCode && Objects.equals(known.getContentHash(), contentHash)) {
+            logger.debug("Содержимое страницы не изменилось: {}", fetched.url());
+            unchangedCount.increment();
+            // без новых валидаторов страница не получала бы 304 и разбиралась бы при каждом обходе
+            String etag = header(response, "ETag", 255);
+            String lastModified = header(response, "Last-Modified", 64);
+            if (!Objects.equals(known.getEtag(), etag) || !Objects.equals(known.getLastModified(), lastModified)) {
+                Page page = new Page();
+                page.setId(known.getId());
+                page.setEtag(etag);
+                page.setLastModified(lastModified);
+                validatorDelta.add(page);
+            }
+            visitedDelta.add(fetched.url());
+            complete();
+            return;
+        }
+
+        Page page = newPage(fetched.path(), statusCode, text);
+        page.setEtag(header(response, "ETag", 255));
+        page.setLastModified(header(response, "Last-Modified", 64));
+        page.setContentHash(contentHash);
+        handOff(lemmatizeQueue, new ParsedPage(fetched.url(), page, text, fetched.started()));
+    }
+
+    /**
+     * Собирает из очереди пакеты страниц и лемматизирует их в общем пуле LemmaProcessor: загрузка страниц
+     * не занимает ядра, а все ядра заняты лемматизацией, даже когда страниц одного сайта мало.
+     */
+    private void runLemmatizeStage() {
+        List<ParsedPage> batch = new ArrayList<>(settings.getLemmatizeBatchSize());
+        while (isRunning() && !Thread.currentThread().isInterrupted()) {
+            ParsedPage first;
+            try {
+                first = lemmatizeQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.clear();
+            batch.add(first);
+            lemmatizeQueue.drainTo(batch, Math.max(0, settings.getLemmatizeBatchSize() - 1));
+            try {
+                List<Map<String, LemmaPositions>> lemmas =
+                        lemmaProcessor.collectLemmaPositions(batch.stream().map(ParsedPage::text).toList());
+                for (int i = 0; i < batch.size(); i++) {
+                    ParsedPage parsed = batch.get(i);
+                    lemmatizedCount.increment();
+                    handOff(persistQueue, new PersistTask(parsed.url(), parsed.page(), lemmas.get(i), parsed.started()));
+                }
+            } catch (Exception e) {
+                errorCount.add(batch.size());
+                logger.error("Ошибка лемматизации пакета из {} страниц ({} ...): {}",
+                        batch.size(), first.url(), e.getMessage(), e);
+                for (ParsedPage parsed : batch) {
+                    complete();
+                }
+            }
+        }
+    }
+
+    private void runPersistStage() {
+        List<PersistTask> batch = new ArrayList<>(settings.getPersistBatchSize());
+        while (true) {
+            PersistTask task = null;
+            try {
+                task = persistQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (task != null) {
+                batch.add(task);
+            }
+            boolean exiting = task == null && (stopped || Thread.currentThread().isInterrupted());
+            if (!batch.isEmpty() && (batch.size() >= settings.getPersistBatchSize() || task == null)) {
+                persist(batch);
+                batch.clear();
+            }
+            if (exiting) {
+                return;
+            }
+        }
+    }
+
+    private void persist(List<PersistTask> batch) {
+        try {
+            List<Page> pages = new ArrayList<>(batch.size());
+            List<LemmaIndexWriter.PageLemmas> changedPages = new ArrayList<>();
+            List<LemmaIndexWriter.PageLemmas> newPages = new ArrayList<>();
+            for (PersistTask task : batch) {
+                pages.add(task.page());
+                (task.page().getId() != null ? changedPages : newPages)
+                        .add(new LemmaIndexWriter.PageLemmas(task.page(), task.lemmas()));
+            }
+            // страницы и их индексы сохраняются в одной транзакции: иначе при ошибке записи лемм страница
+            // осталась бы в базе без индексов и считалась бы известной при продолжении обхода.
+            // saveAllAndFlush: UPDATE изменённых страниц выполняется сразу, а не при коммите поверх token_count,
+            // записанного LemmaIndexWriter. В индекс путей страницы попадают только после коммита
+            Integer savedIndexes = transactionTemplate.execute(status -> {
+                pageRepository.saveAllAndFlush(pages);
+                return lemmaIndexWriter.replaceAll(changedPages) + lemmaIndexWriter.writeAll(newPages);
+            });
+            for (Page page : pages) {
+                pagePathIndex.add(site.getId(), page.getPath());
+            }
+            persistedCount.add(batch.size());
+            long persisted = System.nanoTime();
+            for (PersistTask task : batch) {
+                visitedDelta.add(task.url());
+                pageLatency.recordNanos(persisted - task.started());
+            }
+            logger.debug("Сохранено {} страниц и {} индексов сайта {}", batch.size(), savedIndexes, site.getUrl());
+        } catch (Exception e) {
+            errorCount.increment();
+            logger.error("Ошибка сохранения пакета из {} страниц сайта {}: {}", batch.size(), site.getUrl(), e.getMessage());
+        } finally {
+            for (PersistTask task : batch) {
+                complete();
+            }
+        }
+    }
+
+    private boolean isAllowed(String url) {
+        if (url.isEmpty() || url.startsWith("javascript:") || url.startsWith("tel:")) {
+            return false;
+        }
+        if (PageCrawler.isBlockedUrl(url)) {
+            return false;
+        }
+        return allowedSiteUrls.stream().anyMatch(url::startsWith);
+    }
+
+    private void enqueue(String rawUrl) {
+        String url = UrlNormalizer.normalize(rawUrl);
+        if (url == null || !seenUrls.add(url)) {
+            return;
+        }
+        if (!incremental && pagePathIndex.contains(site.getId(), pathOf(url))) {
+            logger.info("Пропускаем ранее проиндексированную страницу: {}", url);
+            return;
+        }
+        pendingDelta.add(url);
+        submit(url);
+    }
+
+    private void submit(String url) {
+        inFlight.incrementAndGet();
+        scheduler.submit(url);
+    }
+
+    private static String pathOf(String url) {
+        try {
+            // путь без декодирования, как в URL.getPath: так пути хранятся в таблице page
+            return new URI(url).getRawPath();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    private void complete() {
+        if (inFlight.decrementAndGet() == 0) {
+            finished.countDown();
+        }
+    }
+
+    private <T> void handOff(BlockingQueue<T> queue, T item) {
+        try {
+            while (isRunning()) {
+                if (queue.offer(item, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        complete();
+    }
+
+    private <T> void runStage(BlockingQueue<T> queue, Consumer<T> handler, Function<T, String> urlOf) {
+        while (isRunning() && !Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (item == null) {
+                continue;
+            }
+            try {
+                handler.accept(item);
+            } catch (Exception e) {
+                errorCount.increment();
+                logger.error("Ошибка обработки {} на конвейере: {}", urlOf.apply(item), e.getMessage(), e);
+                complete();
+            }
+        }
+    }
+
+    private boolean isRunning() {
+        return !stopped && indexingService.isIndexingInProgress();
+    }
+
+    private static String header(Connection.Response response, String name, int maxLength) {
+        String value = response.header(name);
+        return value == null || value.length() <= maxLength ? value : null;
+    }
+
+    private Page newPage(String path, int code, String content) {
+        Page page = new Page();
+        PageRepository.PageState known = knownPages.get(path);
+        if (known != null) {
+            page.setId(known.getId());
+        }
+        page.setSite(site);
+        page.setPath(path);
+        page.setCode(code);
+        page.setContent(content);
+        return page;
+    }
+
+    private ExecutorService startStage(String name, int threads, Runnable worker) {
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + name + "-" + site.getId() + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            executor.submit(worker);
+        }
+        return executor;
+    }
+
+    private void awaitStage(ExecutorService stage) {
+        try {
+            if (!stage.awaitTermination(30, TimeUnit.SECONDS)) {
+                stage.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            stage.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
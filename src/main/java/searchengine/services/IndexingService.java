@@ -3,6 +3,7 @@ package searchengine.services;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerMode;
 import searchengine.config.SitesList;
 import searchengine.model.IndexingStatus;
 import searchengine.model.Site;
@@ -14,6 +15,11 @@ import searchengine.repository.LemmaRepository;
 import searchengine.repository.IndexRepository;
 import java.util.concurrent.*;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.utils.LemmaProcessor;
+import searchengine.utils.SeenUrlSet;
+import searchengine.utils.UrlNormalizer;
+import searchengine.utils.WordFormCache;
 
 @Service
 public class IndexingService {
@@ -25,25 +31,72 @@ public class IndexingService {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final LemmaProcessor lemmaProcessor;
+    private final LemmaIndexWriter lemmaIndexWriter;
+    private final CrawlFrontierStore frontierStore;
+    private final PagePathIndex pagePathIndex;
+    private final SiteGenerations siteGenerations;
+    private final SearchIndex searchIndex;
+    private final TransactionTemplate transactionTemplate;
     private final Set<CompletableFuture<Void>> runningTasks = Collections.synchronizedSet(new HashSet<>());
     private volatile boolean indexingInProgress = false;
     private ExecutorService executorService;
-    private ForkJoinPool forkJoinPool;
-
-    public IndexingService(SitesList sitesList,LemmaRepository lemmaRepository,IndexRepository indexRepository, SiteRepository siteRepository,  PageRepository pageRepository ) {
+    private final Map<String, IndexingPipeline> activePipelines = new ConcurrentHashMap<>();
+    // итоговые метрики последнего обхода каждого сайта
+    private final Map<String, Map<String, Object>> finishedPipelineMetrics = new ConcurrentHashMap<>();
+    private final ForkJoinPool forkJoinPool = newCrawlerPool(Runtime.getRuntime().availableProcessors());
+
+    public IndexingService(SitesList sitesList,LemmaRepository lemmaRepository,IndexRepository indexRepository, SiteRepository siteRepository,  PageRepository pageRepository, LemmaProcessor lemmaProcessor, LemmaIndexWriter lemmaIndexWriter,
+                           CrawlFrontierStore frontierStore, PagePathIndex pagePathIndex, SiteGenerations siteGenerations,
+                           SearchIndex searchIndex, TransactionTemplate transactionTemplate) {
         this.sitesList = sitesList;
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
         this.indexRepository = indexRepository;
         this.lemmaRepository = lemmaRepository;
+        this.lemmaProcessor = lemmaProcessor;
+        this.lemmaIndexWriter = lemmaIndexWriter;
+        this.frontierStore = frontierStore;
+        this.pagePathIndex = pagePathIndex;
+        this.siteGenerations = siteGenerations;
+        this.searchIndex = searchIndex;
+        this.transactionTemplate = transactionTemplate;
+    }
 
+    /**
+     * Пул рекурсивного обхода: воркеры ждут разрешения планировщика хоста через ManagedBlocker.
+     * minimumRunnable = parallelism — на каждого ждущего воркера пул запускает компенсирующий поток
+     * (по умолчанию компенсация начинается, лишь когда ждут все воркеры, кроме одного).
+     * При исчерпании запасных потоков воркер просто ждёт без компенсации.
+     */
+    private static ForkJoinPool newCrawlerPool(int parallelism) {
+        return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false,
+                0, parallelism + 256, parallelism, pool -> true, 60, TimeUnit.SECONDS);
     }
 
     public synchronized boolean isIndexingInProgress() {
         return indexingInProgress;
     }
 
+    private enum RunMode {
+        FULL,
+        RESUME,
+        INCREMENTAL
+    }
+
     public synchronized void startFullIndexing() {
+        startIndexing(RunMode.FULL);
+    }
+
+    public synchronized void resumeIndexing() {
+        startIndexing(RunMode.RESUME);
+    }
+
+    public synchronized void startIncrementalIndexing() {
+        startIndexing(RunMode.INCREMENTAL);
+    }
+
+    private void startIndexing(RunMode runMode) {
         if (indexingInProgress) {
             logger.warn("Индексация уже запущена. Перезапуск невозможен.");
             return;
@@ -57,7 +110,7 @@ public class IndexingService {
         executorService.submit(() -> {
             try {
                 logger.info("Выполняем индексацию...");
-                performIndexing();
+                performIndexing(runMode);
             } catch (Exception e) {
                 logger.error("Ошибка во время индексации: ", e);
             } finally {
@@ -81,6 +134,8 @@ public class IndexingService {
         executorService.shutdownNow();
         System.out.println("Остановка индексации...");
 
+        activePipelines.values().forEach(IndexingPipeline::stop);
+
         for (CompletableFuture<Void> task : runningTasks) {
             task.cancel(true);
             System.out.println("Задача индексации отменена.");
@@ -109,7 +164,7 @@ public class IndexingService {
         System.out.println("Индексация остановлена.");
     }
 
-    private void performIndexing() {
+    private void performIndexing(RunMode runMode) {
         List<searchengine.config.ConfigSite> sites = sitesList.getSites();
         if (sites == null || sites.isEmpty()) {
             logger.warn("Список сайтов для индексации пуст.");
@@ -119,28 +174,7 @@ public class IndexingService {
         executorService = Executors.newFixedThreadPool(sites.size());
         try {
             for (searchengine.config.ConfigSite site : sites) {
-                executorService.submit(() -> {
-                    logger.info("Индексация сайта: {} ({})", site.getName(), site.getUrl());
-                    try {
-                        deleteSiteData(site.getUrl());
-                        searchengine.model.Site newSite = new searchengine.model.Site();
-                        newSite.setName(site.getName());
-                        newSite.setUrl(site.getUrl());
-                        newSite.setStatus(IndexingStatus.INDEXING);
-                        newSite.setStatusTime(LocalDateTime.now());
-                        siteRepository.save(newSite);
-                        crawlAndIndexPages(newSite, site.getUrl());
-                        if (indexingInProgress) {
-                            updateSiteStatus(site.getUrl(), IndexingStatus.INDEXED);
-                        } else {
-                            logger.warn("Индексация была прервана. Статус сайта {} не обновлен на INDEXED.", site.getName());
-                            updateSiteStatus(site.getUrl(), IndexingStatus.FAILED, "Индексация была прервана.");
-                        }
-                    } catch (Exception e) {
-                        updateSiteStatus(site.getUrl(), IndexingStatus.FAILED, e.getMessage());
-                        logger.error("Ошибка индексации сайта {}: {}", site.getUrl(), e.getMessage());
-                    }
-                });
+                executorService.submit(() -> indexSite(site, runMode));
             }
         } finally {
             executorService.shutdown();
@@ -157,46 +191,150 @@ public class IndexingService {
         }
     }
 
-    private void updateSiteStatus(String url, IndexingStatus status) {
-        updateSiteStatus(url, status, null);
+    private void indexSite(searchengine.config.ConfigSite configSite, RunMode runMode) {
+        logger.info("Индексация сайта: {} ({})", configSite.getName(), configSite.getUrl());
+        Site site = null;
+        try {
+            if (runMode == RunMode.RESUME) {
+                Site latest = siteRepository.findFirstByUrlOrderByGenerationDesc(configSite.getUrl());
+                site = latest != null && frontierStore.hasPending(latest.getId()) ? latest : null;
+            } else if (runMode == RunMode.INCREMENTAL) {
+                site = siteRepository.findByUrl(configSite.getUrl());
+            }
+
+            RunMode siteMode = site != null ? runMode : RunMode.FULL;
+            if (siteMode == RunMode.RESUME) {
+                logger.info("Продолжаем индексацию сайта {} с сохранённого фронтира.", configSite.getUrl());
+            } else if (siteMode == RunMode.INCREMENTAL) {
+                logger.info("Инкрементальная переиндексация сайта {}.", configSite.getUrl());
+                frontierStore.clear(site.getId());
+            } else {
+                // поиск продолжает работать по активному поколению, пока строится новое
+                site = siteGenerations.createShadow(configSite);
+                logger.info("Полная индексация сайта {} в поколение {}.", configSite.getUrl(), site.getGeneration());
+            }
+            updateSiteStatus(site, IndexingStatus.INDEXING, null);
+            crawlAndIndexPages(site, configSite, siteMode);
+
+            if (indexingInProgress) {
+                updateSiteStatus(site, IndexingStatus.INDEXED, null);
+                if (!site.isActive()) {
+                    siteGenerations.activate(site);
+                }
+            } else {
+                logger.warn("Индексация была прервана. Статус сайта {} не обновлен на INDEXED.", configSite.getName());
+                updateSiteStatus(site, IndexingStatus.FAILED, "Индексация была прервана.");
+            }
+        } catch (Exception e) {
+            if (site != null) {
+                updateSiteStatus(site, IndexingStatus.FAILED, e.getMessage());
+            }
+            logger.error("Ошибка индексации сайта {}: {}", configSite.getUrl(), e.getMessage());
+        }
     }
 
-    private void updateSiteStatus(String url, IndexingStatus status, String errorMessage) {
-        Site site = siteRepository.findByUrl(url);
-        if (site != null) {
+    private void updateSiteStatus(Site target, IndexingStatus status, String errorMessage) {
+        siteRepository.findById(target.getId()).ifPresent(site -> {
             site.setStatus(status);
             if (errorMessage != null) {
                 site.setLastError(errorMessage);
             }
             site.setStatusTime(LocalDateTime.now());
             siteRepository.save(site);
-            System.out.println("Статус сайта обновлен: " + url + " — " + status);
+            logger.info("Статус сайта обновлен: {} (поколение {}) — {}", site.getUrl(), site.getGeneration(), status);
+        });
+    }
+
+    private void crawlAndIndexPages(searchengine.model.Site site, searchengine.config.ConfigSite configSite, RunMode runMode) {
+        String startUrl = configSite.getUrl();
+        CrawlScheduler scheduler = CrawlScheduler.forSite(configSite, sitesList.getPipeline());
+        CrawlerMode mode = sitesList.getCrawlerMode();
+        logger.info("Обход сайта {} в режиме {}", startUrl, mode);
+        pagePathIndex.load(site.getId());
+        try {
+            // продолжение и инкрементальный обход поддерживает только конвейер
+            if (mode == CrawlerMode.FORK_JOIN && runMode == RunMode.FULL) {
+                SeenUrlSet visitedUrls = sitesList.getPipeline().newSeenUrlSet();
+                String rootUrl = UrlNormalizer.normalize(startUrl);
+                visitedUrls.add(rootUrl);
+                forkJoinPool.invoke(new PageCrawler(
+                        site,
+                        lemmaIndexWriter,
+                        lemmaProcessor,
+                        scheduler,
+                        rootUrl,
+                        visitedUrls,
+                        pageRepository,
+                        pagePathIndex,
+                        this,
+                        List.of(startUrl)
+                ));
+            } else {
+                runPipeline(site, startUrl, scheduler, mode == CrawlerMode.VIRTUAL_THREADS, runMode);
+            }
+        } finally {
+            // при продолжении или следующем обходе пути загружаются заново
+            pagePathIndex.evict(site.getId());
+            WordFormCache cache = lemmaProcessor.getWordFormCache();
+            logger.info("Кэш словоформ: размер {}, попаданий {}, промахов {}, вытеснений {}, hit rate {}",
+                    cache.size(), cache.getHits(), cache.getMisses(), cache.getEvictions(),
+                    String.format("%.2f", cache.getHitRate()));
         }
     }
 
-    private void crawlAndIndexPages(searchengine.model.Site site, String startUrl) {
-        forkJoinPool = new ForkJoinPool();
+    private void runPipeline(searchengine.model.Site site, String startUrl, CrawlScheduler scheduler,
+                             boolean virtualThreads, RunMode runMode) {
+        IndexingPipeline pipeline = new IndexingPipeline(
+                site,
+                List.of(startUrl),
+                sitesList.getPipeline(),
+                scheduler,
+                virtualThreads,
+                pageRepository,
+                pagePathIndex,
+                lemmaIndexWriter,
+                lemmaProcessor,
+                this,
+                frontierStore,
+                transactionTemplate
+        );
+        activePipelines.put(startUrl, pipeline);
         try {
-            forkJoinPool.invoke(new PageCrawler(
-                    site,
-                    lemmaRepository,
-                    indexRepository,
-                    startUrl,
-                    new HashSet<>(),
-                    pageRepository,
-                    this,
-                    List.of(startUrl)
-            ));
+            boolean completed = switch (runMode) {
+                case RESUME -> pipeline.resume(frontierStore.loadVisited(site.getId()), frontierStore.loadPending(site.getId()));
+                case INCREMENTAL -> pipeline.runIncremental(startUrl, pageRepository.findPageStatesBySiteId(site.getId()));
+                case FULL -> pipeline.run(startUrl);
+            };
+            if (completed) {
+                frontierStore.clear(site.getId());
+            } else {
+                logger.info("Фронтир сайта {} сохранён, индексацию можно продолжить.", startUrl);
+            }
         } finally {
-            forkJoinPool.shutdown();
+            finishedPipelineMetrics.put(startUrl, pipeline.getMetrics());
+            activePipelines.remove(startUrl);
         }
     }
 
+    public Map<String, Map<String, Object>> getPipelineMetrics() {
+        Map<String, Map<String, Object>> metrics = new TreeMap<>();
+        activePipelines.forEach((url, pipeline) -> metrics.put(url, pipeline.getMetrics()));
+        return metrics;
+    }
+
+    public Map<String, Map<String, Object>> getFinishedPipelineMetrics() {
+        return new TreeMap<>(finishedPipelineMetrics);
+    }
+
 
     @Transactional
     public void deleteSiteData(String siteUrl) {
-        searchengine.model.Site site = siteRepository.findByUrl(siteUrl);
-        if (site != null) {
+        List<Site> generations = siteRepository.findAllByUrl(siteUrl);
+        if (generations.isEmpty()) {
+            logger.warn("Сайт {} не найден в базе данных.", siteUrl);
+            return;
+        }
+        for (Site site : generations) {
             Long siteId = (long) site.getId();
 
             int indexesDeleted = indexRepository.deleteBySiteId(site.getId());
@@ -205,14 +343,16 @@ public class IndexingService {
 
             int pagesDeleted = pageRepository.deleteAllBySiteId(site.getId());
 
+            frontierStore.clear(site.getId());
+            pagePathIndex.evict(site.getId());
+            searchIndex.remove(site.getId());
+
             siteRepository.delete(site);
 
             logger.info("Удалено {} записей из таблицы index.", indexesDeleted);
             logger.info("Удалено {} записей из таблицы lemma.", lemmasDeleted);
-            logger.info("Удалено {} записей из таблицы page для сайта {}.", pagesDeleted, siteUrl);
-            logger.info("Сайт {} успешно удален.", siteUrl);
-        } else {
-            logger.warn("Сайт {} не найден в базе данных.", siteUrl);
+            logger.info("Удалено {} записей из таблицы page для сайта {} (поколение {}).", pagesDeleted, siteUrl, site.getGeneration());
         }
+        logger.info("Сайт {} успешно удален.", siteUrl);
     }
 }
@@ -0,0 +1,265 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.model.Page;
+import searchengine.utils.LemmaPositions;
+
+import java.util.*;
+
+/**
+ * Пакетная запись лемм и индексов страницы: вместо SELECT + save на каждую лемму
+ * выполняется несколько многострочных INSERT ... ON DUPLICATE KEY UPDATE и пакетная вставка в `index`.
+ */
+@Component
+public class LemmaIndexWriter {
+    private static final Logger logger = LoggerFactory.getLogger(LemmaIndexWriter.class);
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String UPSERT_LEMMA_PREFIX = "INSERT INTO lemma (site_id, lemma, frequency) VALUES ";
+    private static final String UPSERT_LEMMA_SUFFIX = " ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)";
+    private static final String SELECT_LEMMA_IDS_PREFIX = "SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma IN (";
+    private static final String INSERT_INDEX =
+            "INSERT INTO `index` (page_id, lemma_id, `rank`, positions) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_TOKEN_COUNT = "UPDATE page SET token_count = ? WHERE id = ?";
+    private static final String CLEAR_TOKEN_COUNT = "UPDATE page SET token_count = NULL WHERE id = ?";
+    private static final String UPDATE_VALIDATORS = "UPDATE page SET etag = ?, last_modified = ? WHERE id = ?";
+    private static final String DECREMENT_PAGE_LEMMAS =
+            "UPDATE lemma SET frequency = frequency - 1 WHERE id IN (SELECT lemma_id FROM `index` WHERE page_id = ?)";
+    private static final String DELETE_INDEXES_PREFIX = "DELETE FROM `index` WHERE page_id IN (";
+    private static final String SELECT_PAGE_LEMMAS_PREFIX =
+            "SELECT DISTINCT l.lemma FROM `index` i JOIN lemma l ON l.id = i.lemma_id WHERE i.page_id IN (";
+    private static final String DELETE_UNUSED_LEMMAS = "DELETE FROM lemma WHERE site_id = ? AND frequency <= 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchIndex searchIndex;
+
+    public LemmaIndexWriter(JdbcTemplate jdbcTemplate, SearchIndex searchIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Страница и её леммы с позициями. Пакеты передаются списком: Page — сущность с изменяемым id
+     * и hashCode, разбирающим content, поэтому ключом хэш-таблицы она быть не может.
+     */
+    public record PageLemmas(Page page, Map<String, LemmaPositions> lemmas) {
+    }
+
+    @Transactional
+    public int write(Page page, Map<String, LemmaPositions> lemmas) {
+        return writeAll(List.of(new PageLemmas(page, lemmas)));
+    }
+
+    /**
+     * Записывает леммы и индексы для нескольких уже сохранённых страниц: rank — число позиций леммы,
+     * сами позиции сохраняются в index.positions. frequency каждой леммы увеличивается на число страниц
+     * пакета, где она встречается.
+     */
+    @Transactional
+    public int writeAll(List<PageLemmas> pages) {
+        Map<Integer, List<PageLemmas>> pagesBySite = new HashMap<>();
+        for (PageLemmas entry : pages) {
+            if (entry.lemmas().isEmpty()) {
+                continue;
+            }
+            pagesBySite.computeIfAbsent(entry.page().getSite().getId(), id -> new ArrayList<>()).add(entry);
+        }
+
+        int savedIndexes = 0;
+        for (Map.Entry<Integer, List<PageLemmas>> siteEntry : pagesBySite.entrySet()) {
+            savedIndexes += writeSite(siteEntry.getKey(), siteEntry.getValue());
+        }
+        return savedIndexes;
+    }
+
+    /**
+     * Перезаписывает леммы и индексы уже проиндексированных страниц: старые связи удаляются,
+     * frequency их лемм уменьшается, затем записывается новый набор лемм. У страниц без лемм
+     * (например, теперь отвечающих ошибкой) сбрасывается token_count, чтобы их длина не учитывалась в BM25.
+     */
+    @Transactional
+    public int replaceAll(List<PageLemmas> pages) {
+        if (pages.isEmpty()) {
+            return 0;
+        }
+        List<Integer> pageIds = new ArrayList<>();
+        Map<Integer, List<Integer>> pageIdsBySite = new HashMap<>();
+        for (PageLemmas entry : pages) {
+            Page page = entry.page();
+            pageIds.add(page.getId());
+            pageIdsBySite.computeIfAbsent(page.getSite().getId(), id -> new ArrayList<>()).add(page.getId());
+        }
+        for (Map.Entry<Integer, List<Integer>> siteEntry : pageIdsBySite.entrySet()) {
+            if (searchIndex.isLoaded(siteEntry.getKey())) {
+                // регистрируется раньше добавления новых вхождений в writeAll, поэтому и выполнится раньше
+                List<String> oldLemmas = findPageLemmas(siteEntry.getValue());
+                afterCommit(() -> searchIndex.removePages(siteEntry.getKey(), siteEntry.getValue(), oldLemmas));
+            }
+        }
+
+        List<Object[]> decrementArgs = new ArrayList<>(pageIds.size());
+        List<Object[]> emptiedPages = new ArrayList<>();
+        for (PageLemmas entry : pages) {
+            decrementArgs.add(new Object[]{entry.page().getId()});
+            if (entry.lemmas().isEmpty()) {
+                emptiedPages.add(new Object[]{entry.page().getId()});
+            }
+        }
+        // по одному UPDATE на страницу: каждая лемма страницы уменьшается один раз, даже если у неё несколько строк index
+        jdbcTemplate.batchUpdate(DECREMENT_PAGE_LEMMAS, decrementArgs);
+        for (int from = 0; from < pageIds.size(); from += CHUNK_SIZE) {
+            List<Integer> chunk = pageIds.subList(from, Math.min(from + CHUNK_SIZE, pageIds.size()));
+            String sql = DELETE_INDEXES_PREFIX + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            jdbcTemplate.update(sql, chunk.toArray());
+        }
+
+        int savedIndexes = writeAll(pages);
+        if (!emptiedPages.isEmpty()) {
+            jdbcTemplate.batchUpdate(CLEAR_TOKEN_COUNT, emptiedPages);
+        }
+        for (Integer siteId : pageIdsBySite.keySet()) {
+            jdbcTemplate.update(DELETE_UNUSED_LEMMAS, siteId);
+        }
+        return savedIndexes;
+    }
+
+    /**
+     * Сохраняет новые ETag и Last-Modified страниц, содержимое которых не изменилось:
+     * леммы и индексы таких страниц не перезаписываются.
+     */
+    public void updateValidators(List<Page> pages) {
+        List<Object[]> args = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            args.add(new Object[]{page.getEtag(), page.getLastModified(), page.getId()});
+        }
+        jdbcTemplate.batchUpdate(UPDATE_VALIDATORS, args);
+    }
+
+    private int writeSite(int siteId, List<PageLemmas> pages) {
+        // ключ — collationKey: леммы, равные в collation MySQL, относятся к одной строке lemma,
+        // и страница увеличивает её frequency один раз. TreeMap: одинаковый порядок вставки ключей
+        // снижает риск взаимных блокировок между потоками
+        Map<String, Integer> pageCounts = new TreeMap<>();
+        Map<String, String> lemmaForms = new HashMap<>();
+        Set<String> pageKeys = new HashSet<>();
+        for (PageLemmas entry : pages) {
+            pageKeys.clear();
+            for (String lemma : entry.lemmas().keySet()) {
+                String key = collationKey(lemma);
+                lemmaForms.putIfAbsent(key, lemma);
+                if (pageKeys.add(key)) {
+                    pageCounts.merge(key, 1, Integer::sum);
+                }
+            }
+        }
+
+        upsertLemmas(siteId, pageCounts, lemmaForms);
+        Map<String, Integer> lemmaIds = findLemmaIds(siteId, lemmaForms.values());
+
+        List<Object[]> indexRows = new ArrayList<>();
+        List<Object[]> tokenCounts = new ArrayList<>(pages.size());
+        Map<Integer, Map<String, Float>> postings = new HashMap<>();
+        for (PageLemmas entry : pages) {
+            int tokenCount = 0;
+            for (LemmaPositions positions : entry.lemmas().values()) {
+                tokenCount += positions.size();
+            }
+            tokenCounts.add(new Object[]{tokenCount, entry.page().getId()});
+            Map<Integer, LemmaPositions> positionsByLemma = new HashMap<>();
+            Map<String, Float> pagePostings = new HashMap<>();
+            for (Map.Entry<String, LemmaPositions> lemmaEntry : entry.lemmas().entrySet()) {
+                String key = collationKey(lemmaEntry.getKey());
+                Integer lemmaId = lemmaIds.get(key);
+                if (lemmaId == null) {
+                    logger.warn("Не найден id леммы '{}' для сайта {}", lemmaEntry.getKey(), siteId);
+                    continue;
+                }
+                positionsByLemma.merge(lemmaId, lemmaEntry.getValue(), LemmaPositions::merge);
+                pagePostings.merge(key, (float) lemmaEntry.getValue().size(), Float::sum);
+            }
+            int pageId = entry.page().getId();
+            positionsByLemma.forEach((lemmaId, positions) ->
+                    indexRows.add(new Object[]{pageId, lemmaId, (float) positions.size(), positions.encode()}));
+            postings.put(pageId, pagePostings);
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_INDEX, indexRows);
+        jdbcTemplate.batchUpdate(UPDATE_TOKEN_COUNT, tokenCounts);
+        afterCommit(() -> searchIndex.addPages(siteId, postings));
+        logger.debug("Сайт {}: записано {} лемм и {} индексов для {} страниц",
+                siteId, pageCounts.size(), indexRows.size(), pages.size());
+        return indexRows.size();
+    }
+
+    private void upsertLemmas(int siteId, Map<String, Integer> pageCounts, Map<String, String> lemmaForms) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(pageCounts.entrySet());
+        for (int from = 0; from < entries.size(); from += CHUNK_SIZE) {
+            List<Map.Entry<String, Integer>> chunk = entries.subList(from, Math.min(from + CHUNK_SIZE, entries.size()));
+            StringBuilder sql = new StringBuilder(UPSERT_LEMMA_PREFIX);
+            Object[] args = new Object[chunk.size() * 3];
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                args[i * 3] = siteId;
+                args[i * 3 + 1] = lemmaForms.get(chunk.get(i).getKey());
+                args[i * 3 + 2] = chunk.get(i).getValue();
+            }
+            sql.append(UPSERT_LEMMA_SUFFIX);
+            jdbcTemplate.update(sql.toString(), args);
+        }
+    }
+
+    private List<String> findPageLemmas(List<Integer> pageIds) {
+        Set<String> lemmas = new HashSet<>();
+        for (int from = 0; from < pageIds.size(); from += CHUNK_SIZE) {
+            List<Integer> chunk = pageIds.subList(from, Math.min(from + CHUNK_SIZE, pageIds.size()));
+            String sql = SELECT_PAGE_LEMMAS_PREFIX + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            lemmas.addAll(jdbcTemplate.queryForList(sql, String.class, chunk.toArray()));
+        }
+        return new ArrayList<>(lemmas);
+    }
+
+    /**
+     * Id строк lemma сайта по сохранённым формам лемм; ключ результата — collationKey формы.
+     */
+    Map<String, Integer> findLemmaIds(int siteId, Collection<String> lemmas) {
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        List<String> list = new ArrayList<>(lemmas);
+        for (int from = 0; from < list.size(); from += CHUNK_SIZE) {
+            List<String> chunk = list.subList(from, Math.min(from + CHUNK_SIZE, list.size()));
+            String sql = SELECT_LEMMA_IDS_PREFIX + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            Object[] args = new Object[chunk.size() + 1];
+            args[0] = siteId;
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+            }
+            jdbcTemplate.query(sql, rs -> {
+                lemmaIds.put(collationKey(rs.getString("lemma")), rs.getInt("id"));
+            }, args);
+        }
+        return lemmaIds;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Колонка lemma сравнивается в accent-insensitive collation MySQL, где "ё" = "е" и "й" = "и"
+    static String collationKey(String lemma) {
+        return lemma.replace('ё', 'е').replace('й', 'и');
+    }
+}
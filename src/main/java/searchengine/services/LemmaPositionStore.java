@@ -0,0 +1,59 @@
+package searchengine.services;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.utils.LemmaPositions;
+
+import java.util.*;
+
+/**
+ * Чтение позиций лемм (index.positions) для фраз, близости слов и сниппетов.
+ * Позиции не держатся в поисковом индексе в памяти и читаются только для нужных страниц.
+ */
+@Component
+public class LemmaPositionStore {
+    private static final int CHUNK_SIZE = 500;
+    private static final String SELECT_POSITIONS_PREFIX =
+            "SELECT page_id, lemma_id, positions FROM `index` WHERE positions IS NOT NULL AND lemma_id IN (";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LemmaIndexWriter lemmaIndexWriter;
+
+    public LemmaPositionStore(JdbcTemplate jdbcTemplate, LemmaIndexWriter lemmaIndexWriter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.lemmaIndexWriter = lemmaIndexWriter;
+    }
+
+    /**
+     * pageId -> (ключ леммы -> позиции). lemmas — формы лемм запроса: по ним, как при записи, находятся id строк
+     * lemma, поэтому результат не зависит от collation колонки. Страницы, проиндексированные до появления позиций,
+     * в результат не попадают.
+     */
+    public Map<Integer, Map<String, LemmaPositions>> load(int siteId, Collection<Integer> pageIds,
+                                                          Collection<String> lemmas) {
+        Map<Integer, Map<String, LemmaPositions>> positions = new HashMap<>();
+        if (pageIds.isEmpty() || lemmas.isEmpty()) {
+            return positions;
+        }
+        Map<Integer, String> keysById = new HashMap<>();
+        lemmaIndexWriter.findLemmaIds(siteId, new LinkedHashSet<>(lemmas)).forEach((key, id) -> keysById.put(id, key));
+        if (keysById.isEmpty()) {
+            return positions;
+        }
+        List<Integer> lemmaIds = new ArrayList<>(keysById.keySet());
+        List<Integer> pageList = new ArrayList<>(pageIds);
+        for (int from = 0; from < pageList.size(); from += CHUNK_SIZE) {
+            List<Integer> chunk = pageList.subList(from, Math.min(from + CHUNK_SIZE, pageList.size()));
+            String sql = SELECT_POSITIONS_PREFIX + String.join(", ", Collections.nCopies(lemmaIds.size(), "?"))
+                    + ") AND page_id IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            List<Object> args = new ArrayList<>(lemmaIds.size() + chunk.size());
+            args.addAll(lemmaIds);
+            args.addAll(chunk);
+            jdbcTemplate.query(sql, rs -> {
+                positions.computeIfAbsent(rs.getInt(1), id -> new HashMap<>())
+                        .merge(keysById.get(rs.getInt(2)), LemmaPositions.decode(rs.getBytes(3)), LemmaPositions::merge);
+            }, args.toArray());
+        }
+        return positions;
+    }
+}
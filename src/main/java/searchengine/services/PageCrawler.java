@@ -7,44 +7,49 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import searchengine.model.Page;
 import searchengine.model.Site;
-import searchengine.model.Lemma;
-import searchengine.model.Index;
 import searchengine.repository.PageRepository;
-import searchengine.repository.LemmaRepository;
-import searchengine.repository.IndexRepository;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.RecursiveAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import searchengine.utils.LemmaPositions;
 import searchengine.utils.LemmaProcessor;
+import searchengine.utils.SeenUrlSet;
+import searchengine.utils.UrlNormalizer;
 import java.util.List;
 
 public class PageCrawler extends RecursiveAction {
     private static final Logger logger = LoggerFactory.getLogger(PageCrawler.class);
     private static final Set<String> blockedExtensions = Set.of(".pdf", ".doc", ".docx", ".ppt", ".pptx", ".jpg", ".jpeg", ".png", ".gif", ".bmp", ".webp", ".svg");
     private static final List<String> blockedPathFragments = List.of("/staff/", "/admin/", "/login/", "leading-scientists", "about-people-of-science");
+    static final String USER_AGENT = "Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6";
+    static final String REFERRER = "http://www.google.com";
 
     private final Site site;
     private final List<String> allowedSiteUrls;
     private final String url;
-    private final Set<String> visitedUrls;
+    private final SeenUrlSet visitedUrls;
     private final PageRepository pageRepository;
+    private final PagePathIndex pagePathIndex;
     private final IndexingService indexingService;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final LemmaIndexWriter lemmaIndexWriter;
+    private final LemmaProcessor lemmaProcessor;
+    private final CrawlScheduler scheduler;
 
-    public PageCrawler(Site site, LemmaRepository lemmaRepository, IndexRepository indexRepository,
-                       String url, Set<String> visitedUrls, PageRepository pageRepository,
-                       IndexingService indexingService, List<String> allowedSiteUrls) {
+    public PageCrawler(Site site, LemmaIndexWriter lemmaIndexWriter, LemmaProcessor lemmaProcessor,
+                       CrawlScheduler scheduler, String url, SeenUrlSet visitedUrls, PageRepository pageRepository,
+                       PagePathIndex pagePathIndex, IndexingService indexingService, List<String> allowedSiteUrls) {
         this.site = site;
         this.url = url;
         this.visitedUrls = visitedUrls;
         this.pageRepository = pageRepository;
+        this.pagePathIndex = pagePathIndex;
         this.indexingService = indexingService;
-        this.indexRepository = indexRepository;
-        this.lemmaRepository = lemmaRepository;
+        this.lemmaIndexWriter = lemmaIndexWriter;
+        this.lemmaProcessor = lemmaProcessor;
+        this.scheduler = scheduler;
         this.allowedSiteUrls = allowedSiteUrls;
     }
 
@@ -57,14 +62,6 @@ public class PageCrawler extends RecursiveAction {
 
         if (!checkAndLogStopCondition("Начало обработки")) return;
 
-        synchronized (visitedUrls) {
-            if (visitedUrls.contains(url)) {
-                logger.debug("URL уже обработан: {}", url);
-                return;
-            }
-            visitedUrls.add(url);
-        }
-
         try {
             String path = new URL(url).getPath();
 
@@ -78,23 +75,26 @@ public class PageCrawler extends RecursiveAction {
                 return;
             }
 
-            if (pageRepository.existsByPathAndSiteId(path, site.getId())) {
+            if (pagePathIndex.contains(site.getId(), path)) {
                 logger.info("Пропускаем ранее проиндексированную страницу: {}", url);
                 return;
             }
 
-            long delay = 500 + new Random().nextInt(1500);
-            logger.debug("Задержка перед запросом: {} ms для URL: {}", delay, url);
-            Thread.sleep(delay);
-
-            if (!checkAndLogStopCondition("Перед запросом")) return;
-
-            logger.info("Обработка URL: {}", url);
-            Connection.Response response = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6")
-                    .referrer("http://www.google.com")
-                    .ignoreContentType(true)
-                    .execute();
+            scheduler.acquire(url);
+            Connection.Response response;
+            try {
+                if (!checkAndLogStopCondition("Перед запросом")) return;
+
+                logger.info("Обработка URL: {}", url);
+                response = Jsoup.connect(url)
+                        .userAgent(USER_AGENT)
+                        .referrer(REFERRER)
+                        .ignoreContentType(true)
+                        .execute();
+                response.bufferUp();
+            } finally {
+                scheduler.release(url);
+            }
 
             handleResponse(response);
 
@@ -117,7 +117,7 @@ public class PageCrawler extends RecursiveAction {
             return;
         }
 
-        if (pageRepository.existsByPathAndSiteId(path, site.getId())) {
+        if (pagePathIndex.contains(site.getId(), path)) {
             logger.info("Страница {} уже существует. Пропускаем сохранение.", url);
             return;
         }
@@ -135,10 +135,11 @@ public class PageCrawler extends RecursiveAction {
         else if (contentType != null && contentType.contains("text/html")) {
             Document document = response.parse();
             String text = extractText(document);
-            Map<String, Integer> lemmaFrequencies = lemmatizeText(text);
+            Map<String, LemmaPositions> lemmaFrequencies = lemmatizeText(text);
 
             page.setContent(text);
             pageRepository.save(page);
+            pagePathIndex.add(site.getId(), path);
 
             saveLemmasAndIndexes(lemmaFrequencies, page);
 
@@ -157,83 +158,31 @@ public class PageCrawler extends RecursiveAction {
         page.setCode(code);
         page.setContent(message);
         pageRepository.save(page);
+        pagePathIndex.add(site.getId(), url);
     }
 
-    public Map<String, Integer> lemmatizeText(String text) {
-        Map<String, Integer> lemmaFrequencies = new HashMap<>();
-
+    public Map<String, LemmaPositions> lemmatizeText(String text) {
         try {
-            LemmaProcessor lemmaProcessor = new LemmaProcessor();
-
-            List<String> words = lemmaProcessor.extractLemmas(text);
-
-            for (String word : words) {
-                lemmaFrequencies.put(word, lemmaFrequencies.getOrDefault(word, 0) + 1);
-            }
+            return lemmaProcessor.collectLemmaPositions(text);
         } catch (Exception e) {
             System.err.println("Ошибка лемматизации текста: " + e.getMessage());
             e.printStackTrace();
+            return new HashMap<>();
         }
-
-        return lemmaFrequencies;
     }
 
     private String extractText(Document document) {
         return document.text();
     }
 
-    public void saveLemmasAndIndexes(Map<String, Integer> lemmaFrequencies, Page page) {
-        int newLemmas = 0;
-        int updatedLemmas = 0;
-        int savedIndexes = 0;
-
-        StringBuilder lemmaLog = new StringBuilder("Найденные леммы: ");
-
-        for (Map.Entry<String, Integer> entry : lemmaFrequencies.entrySet()) {
-            String lemmaText = entry.getKey();
-            int rank = entry.getValue();
-
-            lemmaLog.append(lemmaText).append(" (").append(rank).append("), ");
-
-            Optional<Lemma> optionalLemma = lemmaRepository.findByLemmaAndSite(lemmaText, page.getSite());
-
-            Lemma lemma;
-            try {
-                if (optionalLemma.isPresent()) {
-                    lemma = optionalLemma.get();
-                    lemma.setFrequency(lemma.getFrequency() + 1);
-                    lemmaRepository.save(lemma);
-                    updatedLemmas++;
-                } else {
-                    lemma = new Lemma();
-                    lemma.setLemma(lemmaText);
-                    lemma.setSite(page.getSite());
-                    lemma.setFrequency(1);
-                    lemmaRepository.save(lemma);
-                    newLemmas++;
-                }
-
-                Index index = new Index();
-                index.setPage(page);
-                index.setLemma(lemma);
-                index.setRank((float) rank);
-
-                try {
-                    indexRepository.save(index);
-                    savedIndexes++;
-                } catch (org.hibernate.exception.ConstraintViolationException e) {
-                    logger.warn("Дублирующаяся запись для леммы '{}'", lemmaText);
-                }
-
-            } catch (Exception e) {
-                logger.error("Ошибка при обработке леммы '{}': {}", lemmaText, e.getMessage());
-            }
+    public void saveLemmasAndIndexes(Map<String, LemmaPositions> lemmaFrequencies, Page page) {
+        try {
+            int savedIndexes = lemmaIndexWriter.write(page, lemmaFrequencies);
+            logger.info("Страница '{}' обработана. Лемм: {}, Связок (индексов): {}",
+                    page.getPath(), lemmaFrequencies.size(), savedIndexes);
+        } catch (Exception e) {
+            logger.error("Ошибка при сохранении лемм страницы '{}': {}", page.getPath(), e.getMessage());
         }
-
-        logger.info(lemmaLog.toString());
-
-        logger.info("Страница '{}' обработана. Новых лемм: {}, Обновленных лемм: {}, Связок (индексов): {}",
-                page.getPath(), newLemmas, updatedLemmas, savedIndexes);
     }
 
     private void processLinks(Document document) {
@@ -268,22 +217,13 @@ public class PageCrawler extends RecursiveAction {
                 continue;
             }
 
-            String childPath = null;
-            try {
-                childPath = new URL(childUrl).getPath();
-            } catch (Exception e) {
-                logger.warn("Ошибка извлечения пути из URL: {}", childUrl);
-            }
-
-            synchronized (visitedUrls) {
-                if (childPath != null && !visitedUrls.contains(childPath)) {
-                    visitedUrls.add(childPath);
-                    subtasks.add(new PageCrawler(site, lemmaRepository, indexRepository,
-                            childUrl, visitedUrls, pageRepository, indexingService, allowedSiteUrls));
-                    logger.debug("Добавлена ссылка в обработку: {}", childUrl);
-                } else {
-                    logger.debug("Ссылка уже обработана: {}", childUrl);
-                }
+            String normalizedUrl = UrlNormalizer.normalize(childUrl);
+            if (normalizedUrl != null && visitedUrls.add(normalizedUrl)) {
+                subtasks.add(new PageCrawler(site, lemmaIndexWriter, lemmaProcessor, scheduler,
+                        normalizedUrl, visitedUrls, pageRepository, pagePathIndex, indexingService, allowedSiteUrls));
+                logger.debug("Добавлена ссылка в обработку: {}", normalizedUrl);
+            } else {
+                logger.debug("Ссылка уже обработана: {}", childUrl);
             }
         }
         invokeAll(subtasks);
@@ -297,6 +237,12 @@ public class PageCrawler extends RecursiveAction {
         page.setCode(0);
         page.setContent("Ошибка обработки: " + e.getMessage());
         pageRepository.save(page);
+        pagePathIndex.add(site.getId(), url);
+    }
+
+    static boolean isBlockedUrl(String url) {
+        return blockedExtensions.stream().anyMatch(url::endsWith)
+                || blockedPathFragments.stream().anyMatch(url::contains);
     }
 
     private boolean checkAndLogStopCondition(String stage) {
@@ -22,6 +22,10 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.net.URL;
 import org.jsoup.select.Elements;
 import org.jsoup.nodes.Element;
+import searchengine.utils.LemmaPositions;
+import searchengine.utils.LemmaProcessor;
+import searchengine.utils.SeenUrlSet;
+import searchengine.utils.UrlNormalizer;
 
 @Service
 public class PageIndexingService {
@@ -38,9 +42,18 @@ public class PageIndexingService {
     private SitesList sitesList;
     @Autowired
     private IndexingService indexingService;
+    @Autowired
+    private LemmaProcessor lemmaProcessor;
+    @Autowired
+    private LemmaIndexWriter lemmaIndexWriter;
+    @Autowired
+    private PagePathIndex pagePathIndex;
+    @Autowired
+    private SiteGenerations siteGenerations;
 
     private PageCrawler pageCrawler;
-    private final Set<String> visitedUrls = ConcurrentHashMap.newKeySet();
+    private CrawlScheduler scheduler;
+    private SeenUrlSet visitedUrls = new SeenUrlSet();
 
     public void indexPage(String url) {
         Optional<ConfigSite> optionalConfigSite = sitesList.getSites().stream()
@@ -52,25 +65,25 @@ public class PageIndexingService {
             return;
         }
 
-        ConfigSite configSite = optionalConfigSite.get();
+        if (indexingService.isIndexingInProgress()) {
+            logger.warn("Индексация уже запущена, переиндексация сайта {} невозможна.", url);
+            return;
+        }
 
-        indexingService.deleteSiteData(url);
+        ConfigSite configSite = optionalConfigSite.get();
 
-        Site site = new Site();
-        site.setUrl(configSite.getUrl());
-        site.setName(configSite.getName());
-        site.setStatus(IndexingStatus.INDEXING);
-        site.setStatusTime(LocalDateTime.now());
-        siteRepository.save(site);
+        // поиск продолжает работать по активному поколению, пока строится новое
+        Site site = siteGenerations.createShadow(configSite);
 
-        logger.info("Добавлен новый сайт в индексацию: {}", url);
+        logger.info("Добавлен новый сайт в индексацию: {} (поколение {})", url, site.getGeneration());
 
-        visitedUrls.clear();
+        visitedUrls = new SeenUrlSet();
 
         List<String> allowedSiteUrls = new ArrayList<>();
         allowedSiteUrls.add(configSite.getUrl());
 
-        pageCrawler = new PageCrawler(site, lemmaRepository, indexRepository, configSite.getUrl(), visitedUrls, pageRepository, indexingService, allowedSiteUrls);
+        scheduler = CrawlScheduler.forSite(configSite, sitesList.getPipeline());
+        pageCrawler = new PageCrawler(site, lemmaIndexWriter, lemmaProcessor, scheduler, configSite.getUrl(), visitedUrls, pageRepository, pagePathIndex, indexingService, allowedSiteUrls);
 
         try {
             processPageRecursively(url, site);
@@ -79,13 +92,19 @@ public class PageIndexingService {
             site.setStatusTime(LocalDateTime.now());
             site.setLastError(null);
             siteRepository.save(site);
+            if (!site.isActive()) {
+                siteGenerations.activate(site);
+            }
             logger.info("Индексация завершена успешно для сайта: {}", url);
 
         } catch (Exception e) {
+            site.setStatus(IndexingStatus.FAILED);
             site.setLastError("Ошибка при выполнении индексации: " + e.getMessage());
             site.setStatusTime(LocalDateTime.now());
             siteRepository.save(site);
             logger.error("Индексация завершилась с ошибкой: {}", e.getMessage(), e);
+        } finally {
+            pagePathIndex.evict(site.getId());
         }
     }
 
@@ -108,8 +127,9 @@ public class PageIndexingService {
                 !url.matches(".*[\\sА-Яа-яЁё].*");
     }
 
-    private void processPageRecursively(String url, Site site) {
-        if (!visitedUrls.add(url)) {
+    private void processPageRecursively(String rawUrl, Site site) {
+        String url = UrlNormalizer.normalize(rawUrl);
+        if (url == null || !visitedUrls.add(url)) {
             return;
         }
 
@@ -120,18 +140,22 @@ public class PageIndexingService {
             }
 
             String path = new URL(url).getPath();
-            if (pageRepository.existsByPathAndSiteId(path, site.getId())) {
+            if (pagePathIndex.contains(site.getId(), path)) {
                 logger.info("Пропускаем ранее проиндексированную страницу: {}", url);
                 return;
             }
 
-            int delay = (int) (500 + Math.random() * 1500);
-            Thread.sleep(delay);
-
-            org.jsoup.Connection.Response response = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0...")
-                    .referrer("https://www.google.com")
-                    .execute();
+            scheduler.acquire(url);
+            org.jsoup.Connection.Response response;
+            try {
+                response = Jsoup.connect(url)
+                        .userAgent("Mozilla/5.0...")
+                        .referrer("https://www.google.com")
+                        .execute();
+                response.bufferUp();
+            } finally {
+                scheduler.release(url);
+            }
 
             if (response.statusCode() != 200) {
                 logger.warn("Ошибка при доступе к странице {}: HTTP статус {}", url, response.statusCode());
@@ -155,9 +179,10 @@ public class PageIndexingService {
             page.setCode(200);
             page.setTitle(title);
             pageRepository.save(page);
+            pagePathIndex.add(site.getId(), path);
             logger.info("Страница добавлена: {}", url);
 
-            Map<String, Integer> lemmaFrequencies = pageCrawler.lemmatizeText(content);
+            Map<String, LemmaPositions> lemmaFrequencies = pageCrawler.lemmatizeText(content);
             pageCrawler.saveLemmasAndIndexes(lemmaFrequencies, page);
 
             Elements links = document.select("a[href]");
@@ -170,24 +195,23 @@ public class PageIndexingService {
 
         } catch (IOException e) {
             logger.error("Ошибка при индексации страницы: {}", url, e);
-            updateSiteStatus(site.getUrl(), IndexingStatus.FAILED, e.getMessage());
+            updateSiteStatus(site, IndexingStatus.FAILED, e.getMessage());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("Ошибка в потоке индексации, прерывание выполнения", e);
-            updateSiteStatus(site.getUrl(), IndexingStatus.FAILED, e.getMessage());
+            updateSiteStatus(site, IndexingStatus.FAILED, e.getMessage());
         }
     }
 
-    private void updateSiteStatus(String url, IndexingStatus status, String errorMessage) {
-        Site site = siteRepository.findByUrl(url);
-        if (site != null) {
+    private void updateSiteStatus(Site target, IndexingStatus status, String errorMessage) {
+        siteRepository.findById(target.getId()).ifPresent(site -> {
             site.setStatus(status);
             if (errorMessage != null) {
                 site.setLastError(errorMessage);
             }
             site.setStatusTime(LocalDateTime.now());
             siteRepository.save(site);
-            System.out.println("Статус сайта обновлен: " + url + " — " + status);
-        }
+            System.out.println("Статус сайта обновлен: " + site.getUrl() + " — " + status);
+        });
     }
 }
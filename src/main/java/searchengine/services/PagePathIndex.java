@@ -0,0 +1,76 @@
+package searchengine.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.utils.Fingerprints;
+import searchengine.utils.LongHashSet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс путей сохранённых страниц в памяти: отпечатки путей сайта загружаются один раз в начале обхода
+ * и пополняются при сохранении страниц, поэтому проверка "страница уже есть" не ходит в базу.
+ */
+@Component
+public class PagePathIndex {
+    private static final Logger logger = LoggerFactory.getLogger(PagePathIndex.class);
+    private static final String SELECT_PATHS = "SELECT path FROM page WHERE site_id = ?";
+    private static final String COUNT_PAGES = "SELECT COUNT(*) FROM page WHERE site_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, LongHashSet> sites = new ConcurrentHashMap<>();
+
+    public PagePathIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * (Пере)загружает пути сайта из таблицы page.
+     */
+    public void load(int siteId) {
+        Integer count = jdbcTemplate.queryForObject(COUNT_PAGES, Integer.class, siteId);
+        LongHashSet paths = new LongHashSet(count != null ? count : 0);
+        jdbcTemplate.query(SELECT_PATHS, rs -> {
+            paths.add(Fingerprints.of(rs.getString(1)));
+        }, siteId);
+        sites.put(siteId, paths);
+        logger.info("Загружено {} путей страниц сайта {} ({} КБ)", paths.size(), siteId, paths.memoryBytes() / 1024);
+    }
+
+    public boolean contains(int siteId, String path) {
+        LongHashSet paths = pathsOf(siteId);
+        long fingerprint = Fingerprints.of(path);
+        synchronized (paths) {
+            return paths.contains(fingerprint);
+        }
+    }
+
+    public void add(int siteId, String path) {
+        LongHashSet paths = pathsOf(siteId);
+        long fingerprint = Fingerprints.of(path);
+        synchronized (paths) {
+            paths.add(fingerprint);
+        }
+    }
+
+    public void evict(int siteId) {
+        sites.remove(siteId);
+    }
+
+    private LongHashSet pathsOf(int siteId) {
+        LongHashSet paths = sites.get(siteId);
+        if (paths == null) {
+            synchronized (this) {
+                paths = sites.get(siteId);
+                if (paths == null) {
+                    load(siteId);
+                    paths = sites.get(siteId);
+                }
+            }
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,799 @@
+package searchengine.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.config.SitesList;
+import searchengine.utils.CompressedPostingList;
+import searchengine.utils.IndexSegment;
+import searchengine.utils.PostingCursor;
+import searchengine.utils.PostingList;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.DatabaseMetaData;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Обратный индекс для поиска: для каждой леммы сайта — список (id страницы, rank), упорядоченный по id страницы.
+ * <p>
+ * Индекс сайта — неизменяемый {@link IndexSegment} плюс небольшой хвост в памяти: вхождения, записанные
+ * {@link LemmaIndexWriter} после построения сегмента, и множество страниц, чьи вхождения в сегменте устарели.
+ * Когда хвост вырастает относительно сегмента, фоновый поток сливает их в новый сегмент.
+ * <p>
+ * Если задан search.segment-dir, сегменты пишутся в файлы site-&lt;id&gt;.seg и отображаются в память, поэтому
+ * после перезапуска сайт не перечитывается из MySQL, а куча почти не зависит от объёма индекса. Файл
+ * используется, только если его контрольные суммы совпадают с таблицей index; иначе сегмент строится заново.
+ * Без каталога сегменты хранятся в ByteBuffer в куче или вне её (search.off-heap-postings).
+ * <p>
+ * Сайт загружается при первом поиске по нему; изменения незагруженных сайтов пропускаются — их увидит загрузка.
+ * <p>
+ * Релевантность — BM25: rank из индекса служит частотой леммы на странице, длина списка вхождений — числом
+ * страниц с леммой (frequency), а длина страницы берётся из page.token_count, который индекс держит в памяти.
+ */
+@Component
+public class SearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndex.class);
+    private static final String SELECT_POSTINGS =
+            "SELECT l.lemma, i.page_id, i.`rank` FROM `index` i JOIN lemma l ON l.id = i.lemma_id WHERE l.site_id = ?";
+    private static final String SELECT_TOKEN_COUNTS = "SELECT id, token_count FROM page WHERE site_id = ?";
+    private static final String SELECT_CHECKSUMS = "SELECT COUNT(*), COALESCE(SUM(i.page_id), 0), COALESCE(SUM(i.`rank`), 0) " +
+            "FROM `index` i JOIN lemma l ON l.id = i.lemma_id WHERE l.site_id = ?";
+    private static final int MIN_PENDING_TO_MERGE = 20_000;
+
+    public record ScoredPage(int siteId, int pageId, double relevance) {
+    }
+
+    /**
+     * Лучшие по релевантности страницы поиска (не больше capacity) и общее число найденных.
+     * Хранится min-куча: новая страница вытесняет худшую из лучших, остальные только учитываются в count.
+     * При равной релевантности выше страница с меньшим id сайта, затем страницы. Не потокобезопасен.
+     */
+    public static final class TopPages {
+        // «лучше» — больше релевантность, при равенстве меньше siteId и pageId
+        static final Comparator<ScoredPage> BEST_FIRST = Comparator
+                .comparingDouble(ScoredPage::relevance).reversed()
+                .thenComparingInt(ScoredPage::siteId)
+                .thenComparingInt(ScoredPage::pageId);
+
+        private final int capacity;
+        private final PriorityQueue<ScoredPage> heap;
+        private int count;
+
+        public TopPages(int capacity) {
+            this.capacity = Math.max(0, capacity);
+            this.heap = new PriorityQueue<>(Math.min(this.capacity, 1024) + 1, BEST_FIRST.reversed());
+        }
+
+        void offer(int siteId, int pageId, double relevance) {
+            count++;
+            if (capacity == 0) {
+                return;
+            }
+            if (heap.size() == capacity) {
+                ScoredPage worst = heap.peek();
+                if (relevance < worst.relevance() || relevance == worst.relevance()
+                        && (siteId > worst.siteId() || siteId == worst.siteId() && pageId > worst.pageId())) {
+                    return;
+                }
+                heap.poll();
+            }
+            heap.add(new ScoredPage(siteId, pageId, relevance));
+        }
+
+        public int count() {
+            return count;
+        }
+
+        /**
+         * Слияние упорядоченных списков лучших страниц (например, разных сайтов) через кучу по их головам.
+         */
+        public static List<ScoredPage> merge(List<List<ScoredPage>> sortedLists, int limit) {
+            PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                    (left, right) -> BEST_FIRST.compare(sortedLists.get(left[0]).get(left[1]),
+                            sortedLists.get(right[0]).get(right[1])));
+            for (int i = 0; i < sortedLists.size(); i++) {
+                if (!sortedLists.get(i).isEmpty()) {
+                    heads.add(new int[]{i, 0});
+                }
+            }
+            List<ScoredPage> merged = new ArrayList<>();
+            while (!heads.isEmpty() && merged.size() < limit) {
+                int[] head = heads.poll();
+                List<ScoredPage> list = sortedLists.get(head[0]);
+                merged.add(list.get(head[1]));
+                if (++head[1] < list.size()) {
+                    heads.add(head);
+                }
+            }
+            return merged;
+        }
+
+        /**
+         * Собранные страницы от лучшей к худшей.
+         */
+        public List<ScoredPage> sorted() {
+            List<ScoredPage> result = new ArrayList<>(heap);
+            result.sort(BEST_FIRST);
+            return result;
+        }
+    }
+
+    private record Term(String key, int pageCount, PostingCursor cursor) {
+    }
+
+    private interface SegmentContent {
+        void writeTo(IndexSegment.Writer writer) throws IOException;
+    }
+
+    private static final class SiteIndex {
+        private final int siteId;
+        // читатели и подмена сегмента
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        // писатели и слияние: пока сегмент строится, хвост не меняется, а поиск продолжает работать
+        private final ReentrantLock writeGate = new ReentrantLock();
+        private IndexSegment segment = IndexSegment.empty();
+        private Map<String, PostingList> pending = new HashMap<>();
+        private Set<Integer> masked = new HashSet<>();
+        // лемма -> число замаскированных страниц в её списке сегмента, чтобы частота леммы их не учитывала
+        private Map<String, Integer> maskedPostings = new HashMap<>();
+        private long pendingPostings;
+        private long pageCount;
+        // id страницы -> число слов; rank списка используется как длина
+        private final PostingList tokenCounts = new PostingList();
+        private long totalTokens;
+        private boolean mergeScheduled;
+
+        private SiteIndex(int siteId) {
+            this.siteId = siteId;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final boolean offHeap;
+    private final double maxLemmaPageShare;
+    private final double k1;
+    private final double b;
+    private final Path segmentDir;
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    // растёт при каждом изменении данных сайта, в том числе незагруженного; по нему устаревает кэш ответов
+    private final Map<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-index-merger");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder mappedLoads = new LongAdder();
+    private final LongAdder databaseLoads = new LongAdder();
+    private final LongAdder droppedLemmas = new LongAdder();
+
+    public SearchIndex(JdbcTemplate jdbcTemplate, SitesList sitesList) {
+        SearchSettings settings = sitesList.getSearch();
+        this.jdbcTemplate = jdbcTemplate;
+        DataSource dataSource = Objects.requireNonNull(jdbcTemplate.getDataSource());
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(streamingFetchSize(dataSource));
+        this.offHeap = settings.isOffHeapPostings();
+        this.maxLemmaPageShare = settings.getMaxLemmaPageShare();
+        this.k1 = settings.getBm25K1();
+        this.b = settings.getBm25B();
+        this.segmentDir = createSegmentDir(settings.getSegmentDir());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        merger.shutdownNow();
+        if (segmentDir == null) {
+            return;
+        }
+        // хвосты сливаются в файлы, чтобы после перезапуска сегменты совпали с базой и не перечитывались
+        for (SiteIndex index : sites.values()) {
+            if (index.pendingPostings > 0 || !index.masked.isEmpty()) {
+                merge(index);
+            }
+        }
+    }
+
+    /**
+     * Страницы сайта, содержащие все леммы запроса, с релевантностью BM25;
+     * все они учитываются в top, но хранятся только лучшие.
+     * Длина списка вхождений леммы равна её frequency (числу страниц сайта с леммой), поэтому план строится
+     * без обращения к базе: леммы упорядочиваются от редкой к частой, а леммы с долей страниц больше
+     * max-lemma-page-share отбрасываются как стоп-слова. Если какой-то леммы на сайте нет, результат пуст сразу.
+     */
+    public void search(int siteId, Collection<String> lemmas, TopPages top) {
+        SiteIndex index = siteIndex(siteId);
+        index.lock.readLock().lock();
+        try {
+            Set<String> keys = new LinkedHashSet<>();
+            lemmas.forEach(lemma -> keys.add(LemmaIndexWriter.collationKey(lemma)));
+            List<Term> terms = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                CompressedPostingList stored = index.segment.get(key);
+                PostingList added = index.pending.get(key);
+                int pageCount = (stored != null ? stored.size() - index.maskedPostings.getOrDefault(key, 0) : 0)
+                        + (added != null ? added.size() : 0);
+                if (pageCount == 0) {
+                    return;
+                }
+                terms.add(new Term(key, pageCount, cursorOf(index, stored, added)));
+            }
+            if (terms.isEmpty()) {
+                return;
+            }
+            terms.sort(Comparator.comparingInt(Term::pageCount));
+            intersect(index, plan(index, terms), top);
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет (или обновляет) вхождения страниц: pageId -> (лемма -> rank).
+     */
+    public void addPages(int siteId, Map<Integer, Map<String, Float>> pages) {
+        bumpVersion(siteId);
+        SiteIndex index = sites.get(siteId);
+        if (index == null) {
+            return;
+        }
+        index.writeGate.lock();
+        try {
+            index.lock.writeLock().lock();
+            try {
+                pages.forEach((pageId, ranks) -> {
+                    // перезаписываемые страницы сначала маскируются в removePages. Страница с известной длиной
+                    // уже учтена загрузкой сайта: её транзакция завершилась до чтения таблицы page, а вхождения,
+                    // прочитанные ещё раньше, могли попасть и в сегмент — они маскируются и заменяются этими
+                    if (!index.masked.contains(pageId)) {
+                        if (hasTokenCount(index, pageId)) {
+                            Set<String> keys = new HashSet<>();
+                            ranks.keySet().forEach(lemma -> keys.add(LemmaIndexWriter.collationKey(lemma)));
+                            mask(index, List.of(pageId), keys);
+                        } else {
+                            index.pageCount++;
+                        }
+                    }
+                    float tokens = 0;
+                    for (Float rank : ranks.values()) {
+                        tokens += rank;
+                    }
+                    setTokenCount(index, pageId, tokens);
+                });
+                pages.forEach((pageId, ranks) -> ranks.forEach((lemma, rank) -> {
+                    index.pending.computeIfAbsent(LemmaIndexWriter.collationKey(lemma), key -> new PostingList())
+                            .add(pageId, rank);
+                    index.pendingPostings++;
+                }));
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+            scheduleMergeIfNeeded(index);
+        } finally {
+            index.writeGate.unlock();
+        }
+    }
+
+    /**
+     * Убирает вхождения страниц: в сегменте они маскируются до слияния, из хвоста удаляются по прежнему
+     * набору лемм этих страниц. Длины страниц тоже забываются; страницы, которые остались с леммами, вернут их
+     * следующим addPages. В числе страниц сайта они остаются: строки таблицы page не удаляются.
+     */
+    public void removePages(int siteId, Collection<Integer> pageIds, Collection<String> lemmas) {
+        bumpVersion(siteId);
+        SiteIndex index = sites.get(siteId);
+        if (index == null || pageIds.isEmpty()) {
+            return;
+        }
+        Set<Integer> removed = new HashSet<>(pageIds);
+        Set<String> keys = new HashSet<>();
+        lemmas.forEach(lemma -> keys.add(LemmaIndexWriter.collationKey(lemma)));
+        index.writeGate.lock();
+        try {
+            index.lock.writeLock().lock();
+            try {
+                mask(index, removed, keys);
+                removeTokenCounts(index, removed);
+                for (String key : keys) {
+                    PostingList added = index.pending.get(key);
+                    if (added != null) {
+                        index.pendingPostings -= added.removeAll(removed);
+                        if (added.size() == 0) {
+                            index.pending.remove(key);
+                        }
+                    }
+                }
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+            scheduleMergeIfNeeded(index);
+        } finally {
+            index.writeGate.unlock();
+        }
+    }
+
+    /**
+     * Номер версии данных сайта; меняется при любом изменении его страниц.
+     */
+    public long version(int siteId) {
+        AtomicLong version = versions.get(siteId);
+        return version != null ? version.get() : 0;
+    }
+
+    private void bumpVersion(int siteId) {
+        versions.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    public boolean isLoaded(int siteId) {
+        return sites.containsKey(siteId);
+    }
+
+    /**
+     * Загружает индекс сайта, если он ещё не загружен (отображает сегмент или строит его по базе).
+     */
+    public void ensureLoaded(int siteId) {
+        siteIndex(siteId);
+    }
+
+    /**
+     * Выгружает индекс сайта и удаляет файл его сегмента (сайт или его поколение удалены).
+     */
+    public void remove(int siteId) {
+        // под writeGate: идущее слияние иначе вернуло бы удалённый файл сегмента на место
+        SiteIndex index = sites.get(siteId);
+        if (index != null) {
+            index.writeGate.lock();
+        }
+        try {
+            sites.remove(siteId);
+            bumpVersion(siteId);
+            if (segmentDir != null) {
+                try {
+                    Files.deleteIfExists(segmentFile(siteId));
+                } catch (IOException e) {
+                    logger.warn("Не удалось удалить сегмент индекса сайта {}: {}", siteId, e.getMessage());
+                }
+            }
+        } finally {
+            if (index != null) {
+                index.writeGate.unlock();
+            }
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long pages = 0;
+        long lemmas = 0;
+        long postingCount = 0;
+        long pendingPostings = 0;
+        long segmentBytes = 0;
+        long mappedSites = 0;
+        for (SiteIndex index : sites.values()) {
+            index.lock.readLock().lock();
+            try {
+                pages += index.pageCount;
+                lemmas += index.segment.lemmaCount();
+                postingCount += index.segment.postingCount();
+                pendingPostings += index.pendingPostings;
+                segmentBytes += index.segment.sizeBytes();
+                mappedSites += index.segment.isMapped() ? 1 : 0;
+            } finally {
+                index.lock.readLock().unlock();
+            }
+        }
+        metrics.put("loadedSites", sites.size());
+        metrics.put("mappedSites", mappedSites);
+        metrics.put("pages", pages);
+        metrics.put("lemmas", lemmas);
+        metrics.put("postings", postingCount);
+        metrics.put("pendingPostings", pendingPostings);
+        metrics.put("segmentBytes", segmentBytes);
+        metrics.put("bytesPerPosting", postingCount > 0 ? (double) segmentBytes / postingCount : 0.0);
+        metrics.put("merges", merges.sum());
+        metrics.put("mappedLoads", mappedLoads.sum());
+        metrics.put("databaseLoads", databaseLoads.sum());
+        metrics.put("droppedLemmas", droppedLemmas.sum());
+        metrics.put("segmentDir", segmentDir != null ? segmentDir.toString() : null);
+        metrics.put("offHeap", offHeap);
+        return metrics;
+    }
+
+    private static PostingCursor cursorOf(SiteIndex index, CompressedPostingList stored, PostingList added) {
+        PostingCursor cursor = null;
+        if (stored != null) {
+            cursor = stored.cursor();
+            if (!index.masked.isEmpty()) {
+                Set<Integer> masked = index.masked;
+                cursor = PostingCursor.skipping(cursor, masked::contains);
+            }
+        }
+        if (added != null && added.size() > 0) {
+            cursor = cursor == null ? added.cursor() : PostingCursor.union(cursor, added.cursor());
+        }
+        return cursor;
+    }
+
+    /**
+     * Отбрасывает слишком частые леммы; самая редкая лемма остаётся всегда, чтобы запрос из одних
+     * частых слов не остался пустым.
+     */
+    private List<Term> plan(SiteIndex index, List<Term> terms) {
+        if (maxLemmaPageShare <= 0 || maxLemmaPageShare >= 1 || index.pageCount <= 0 || terms.size() == 1) {
+            return terms;
+        }
+        long limit = (long) Math.ceil(maxLemmaPageShare * index.pageCount);
+        List<Term> planned = new ArrayList<>(terms.size());
+        planned.add(terms.get(0));
+        for (int i = 1; i < terms.size(); i++) {
+            Term term = terms.get(i);
+            if (term.pageCount() > limit) {
+                droppedLemmas.increment();
+                logger.debug("Сайт {}: лемма '{}' встречается на {} из {} страниц и исключена из запроса",
+                        index.siteId, term.key(), term.pageCount(), index.pageCount);
+            } else {
+                planned.add(term);
+            }
+        }
+        return planned;
+    }
+
+    /**
+     * Пересечение списков, упорядоченных от самого короткого: кандидатов даёт первый список, остальные
+     * только догоняют его курсором; исчерпание любого списка завершает поиск. Совпавшие страницы
+     * оцениваются по BM25 без обращения к тексту.
+     */
+    private void intersect(SiteIndex index, List<Term> terms, TopPages top) {
+        PostingCursor[] cursors = new PostingCursor[terms.size()];
+        double[] idf = new double[terms.size()];
+        float[] frequencies = new float[terms.size()];
+        long pageCount = Math.max(index.pageCount, terms.get(terms.size() - 1).pageCount());
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = terms.get(i).cursor();
+            int documentFrequency = terms.get(i).pageCount();
+            idf[i] = Math.log(1 + (pageCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        }
+        // кандидаты идут по возрастанию id, поэтому длины страниц читаются одним курсором
+        PostingCursor tokenCounts = index.tokenCounts.cursor();
+        double averageTokens = index.tokenCounts.size() > 0 ? (double) index.totalTokens / index.tokenCounts.size() : 0;
+
+        int pageId = cursors[0].advance(0);
+        candidates:
+        while (pageId != PostingCursor.NO_MORE) {
+            frequencies[0] = cursors[0].rank();
+            for (int i = 1; i < cursors.length; i++) {
+                int found = cursors[i].advance(pageId);
+                if (found == PostingCursor.NO_MORE) {
+                    break candidates;
+                }
+                if (found != pageId) {
+                    // самый короткий список догоняет id, на котором остановился более длинный
+                    pageId = cursors[0].advance(found);
+                    continue candidates;
+                }
+                frequencies[i] = cursors[i].rank();
+            }
+            // страницы без сохранённой длины считаются средними
+            double lengthNorm = k1;
+            if (averageTokens > 0) {
+                double tokens = tokenCounts.advance(pageId) == pageId ? tokenCounts.rank() : averageTokens;
+                lengthNorm = k1 * (1 - b + b * tokens / averageTokens);
+            }
+            double relevance = 0;
+            for (int i = 0; i < cursors.length; i++) {
+                relevance += idf[i] * frequencies[i] * (k1 + 1) / (frequencies[i] + lengthNorm);
+            }
+            top.offer(index.siteId, pageId, relevance);
+            pageId = cursors[0].advance(pageId + 1);
+        }
+    }
+
+    /**
+     * Маскирует вхождения страниц в сегменте и учитывает их в maskedPostings по спискам переданных лемм.
+     * Уже замаскированные страницы пропускаются: их вхождения учтены раньше.
+     */
+    private static void mask(SiteIndex index, Collection<Integer> pageIds, Collection<String> keys) {
+        List<Integer> newlyMasked = new ArrayList<>(pageIds.size());
+        for (Integer pageId : pageIds) {
+            if (index.masked.add(pageId)) {
+                newlyMasked.add(pageId);
+            }
+        }
+        if (newlyMasked.isEmpty()) {
+            return;
+        }
+        Collections.sort(newlyMasked);
+        for (String key : keys) {
+            CompressedPostingList stored = index.segment.get(key);
+            if (stored == null) {
+                continue;
+            }
+            PostingCursor cursor = stored.cursor();
+            int found = 0;
+            for (int pageId : newlyMasked) {
+                int at = cursor.advance(pageId);
+                if (at == PostingCursor.NO_MORE) {
+                    break;
+                }
+                if (at == pageId) {
+                    found++;
+                }
+            }
+            if (found > 0) {
+                index.maskedPostings.merge(key, found, Integer::sum);
+            }
+        }
+    }
+
+    private static boolean hasTokenCount(SiteIndex index, int pageId) {
+        int position = index.tokenCounts.advance(pageId, 0);
+        return position < index.tokenCounts.size() && index.tokenCounts.pageId(position) == pageId;
+    }
+
+    private static void setTokenCount(SiteIndex index, int pageId, float tokens) {
+        int position = index.tokenCounts.advance(pageId, 0);
+        if (position < index.tokenCounts.size() && index.tokenCounts.pageId(position) == pageId) {
+            index.totalTokens -= (long) index.tokenCounts.rank(position);
+        }
+        index.tokenCounts.add(pageId, tokens);
+        index.totalTokens += (long) tokens;
+    }
+
+    private static void removeTokenCounts(SiteIndex index, Set<Integer> pageIds) {
+        for (Integer pageId : pageIds) {
+            int position = index.tokenCounts.advance(pageId, 0);
+            if (position < index.tokenCounts.size() && index.tokenCounts.pageId(position) == pageId) {
+                index.totalTokens -= (long) index.tokenCounts.rank(position);
+            }
+        }
+        index.tokenCounts.removeAll(pageIds);
+    }
+
+    private void scheduleMergeIfNeeded(SiteIndex index) {
+        long threshold = Math.max(MIN_PENDING_TO_MERGE, index.segment.postingCount() >> 3);
+        if (!index.mergeScheduled && index.pendingPostings + index.masked.size() >= threshold) {
+            index.mergeScheduled = true;
+            merger.submit(() -> merge(index));
+        }
+    }
+
+    /**
+     * Сливает хвост загруженного сайта в сегмент в текущем потоке.
+     */
+    void merge(int siteId) {
+        SiteIndex index = sites.get(siteId);
+        if (index != null) {
+            merge(index);
+        }
+    }
+
+    private void merge(SiteIndex index) {
+        index.writeGate.lock();
+        try {
+            if (sites.get(index.siteId) != index) {
+                return;
+            }
+            long started = System.currentTimeMillis();
+            // пока держится writeGate, хвост не меняется, поэтому сегмент строится без блокировки поиска
+            // pageCount не перечитывается из базы: в ней уже могут быть страницы, чей addPages ждёт writeGate
+            // и учтёт их сам
+            IndexSegment merged = writeSegment(index.siteId, writer -> mergeInto(writer, index));
+            index.lock.writeLock().lock();
+            try {
+                index.segment = merged;
+                index.pending = new HashMap<>();
+                index.masked = new HashSet<>();
+                index.maskedPostings = new HashMap<>();
+                index.pendingPostings = 0;
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+            merges.increment();
+            logger.info("Сегмент индекса сайта {} слит: {} лемм, {} вхождений за {} мс",
+                    index.siteId, merged.lemmaCount(), merged.postingCount(), System.currentTimeMillis() - started);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ошибка слияния сегмента индекса сайта {}: {}", index.siteId, e.getMessage(), e);
+        } finally {
+            index.mergeScheduled = false;
+            index.writeGate.unlock();
+        }
+    }
+
+    private static void mergeInto(IndexSegment.Writer writer, SiteIndex index) throws IOException {
+        IndexSegment segment = index.segment;
+        List<Map.Entry<byte[], PostingList>> added = new ArrayList<>(index.pending.size());
+        index.pending.forEach((key, list) -> added.add(Map.entry(key.getBytes(StandardCharsets.UTF_8), list)));
+        added.sort((left, right) -> IndexSegment.compareKeys(left.getKey(), right.getKey()));
+
+        int stored = 0;
+        int pending = 0;
+        while (stored < segment.lemmaCount() || pending < added.size()) {
+            byte[] storedKey = stored < segment.lemmaCount() ? segment.keyBytes(stored) : null;
+            byte[] pendingKey = pending < added.size() ? added.get(pending).getKey() : null;
+            int comparison = storedKey == null ? 1 : pendingKey == null ? -1 : IndexSegment.compareKeys(storedKey, pendingKey);
+
+            PostingList merged = new PostingList();
+            if (comparison <= 0) {
+                segment.postings(stored++).decodeInto(merged);
+                if (!index.masked.isEmpty()) {
+                    merged.removeAll(index.masked);
+                }
+            }
+            if (comparison >= 0) {
+                PostingList list = added.get(pending++).getValue();
+                for (int i = 0; i < list.size(); i++) {
+                    merged.add(list.pageId(i), list.rank(i));
+                }
+            }
+            if (merged.size() > 0) {
+                writer.add(comparison <= 0 ? storedKey : pendingKey, merged);
+            }
+        }
+    }
+
+    private SiteIndex siteIndex(int siteId) {
+        SiteIndex index = sites.get(siteId);
+        if (index != null) {
+            return index;
+        }
+        SiteIndex created = new SiteIndex(siteId);
+        // блокировка берётся до публикации, чтобы параллельный поиск дождался окончания загрузки
+        created.lock.writeLock().lock();
+        try {
+            index = sites.putIfAbsent(siteId, created);
+            if (index != null) {
+                return index;
+            }
+            // вхождения читаются раньше страниц: всё, что попало в сегмент, есть и в прочитанных длинах страниц,
+            // поэтому addPages, дождавшийся загрузки, распознаёт такие страницы и не учитывает их дважды
+            created.segment = load(siteId);
+            loadPages(created);
+            return created;
+        } catch (IOException | RuntimeException e) {
+            sites.remove(siteId, created);
+            throw new IllegalStateException("Не удалось загрузить поисковый индекс сайта " + siteId, e);
+        } finally {
+            created.lock.writeLock().unlock();
+        }
+    }
+
+    private IndexSegment load(int siteId) throws IOException {
+        long started = System.currentTimeMillis();
+        if (segmentDir != null && Files.exists(segmentFile(siteId))) {
+            try {
+                IndexSegment mapped = IndexSegment.map(segmentFile(siteId));
+                if (matchesDatabase(siteId, mapped)) {
+                    mappedLoads.increment();
+                    logger.info("Отображён сегмент индекса сайта {}: {} лемм, {} вхождений ({} КБ) за {} мс",
+                            siteId, mapped.lemmaCount(), mapped.postingCount(), mapped.sizeBytes() / 1024,
+                            System.currentTimeMillis() - started);
+                    return mapped;
+                }
+                logger.info("Сегмент индекса сайта {} не совпадает с базой, строится заново", siteId);
+            } catch (IOException e) {
+                logger.warn("Не удалось прочитать сегмент индекса сайта {}: {}", siteId, e.getMessage());
+            }
+        }
+
+        Map<String, PostingList> lists = new HashMap<>();
+        streamingJdbcTemplate.query(SELECT_POSTINGS, rs -> {
+            lists.computeIfAbsent(LemmaIndexWriter.collationKey(rs.getString(1)), key -> new PostingList())
+                    .append(rs.getInt(2), rs.getFloat(3));
+        }, siteId);
+        IndexSegment segment = writeSegment(siteId, writer -> {
+            List<byte[]> keys = new ArrayList<>(lists.size());
+            lists.keySet().forEach(key -> keys.add(key.getBytes(StandardCharsets.UTF_8)));
+            keys.sort(IndexSegment::compareKeys);
+            for (byte[] key : keys) {
+                writer.add(key, lists.remove(new String(key, StandardCharsets.UTF_8)));
+            }
+        });
+        databaseLoads.increment();
+        logger.info("Загружен поисковый индекс сайта {}: {} лемм, {} вхождений ({} КБ, {} байт на вхождение) за {} мс",
+                siteId, segment.lemmaCount(), segment.postingCount(), segment.sizeBytes() / 1024,
+                String.format("%.2f", segment.postingCount() > 0 ? (double) segment.sizeBytes() / segment.postingCount() : 0.0),
+                System.currentTimeMillis() - started);
+        return segment;
+    }
+
+    /**
+     * Число страниц сайта и длины проиндексированных страниц одним запросом, то есть по одному снимку таблицы.
+     */
+    private void loadPages(SiteIndex index) {
+        long[] pageCount = {0};
+        streamingJdbcTemplate.query(SELECT_TOKEN_COUNTS, rs -> {
+            pageCount[0]++;
+            int tokens = rs.getInt(2);
+            if (!rs.wasNull()) {
+                index.tokenCounts.append(rs.getInt(1), tokens);
+                index.totalTokens += tokens;
+            }
+        }, index.siteId);
+        index.tokenCounts.seal();
+        index.pageCount = pageCount[0];
+    }
+
+    private boolean matchesDatabase(int siteId, IndexSegment segment) {
+        return Boolean.TRUE.equals(jdbcTemplate.query(SELECT_CHECKSUMS, rs -> {
+            if (!rs.next()) {
+                return false;
+            }
+            double rankSum = rs.getDouble(3);
+            return rs.getLong(1) == segment.postingCount()
+                    && rs.getLong(2) == segment.pageIdSum()
+                    && Math.abs(rankSum - segment.rankSum()) <= 1e-6 * Math.max(1.0, Math.abs(rankSum));
+        }, siteId));
+    }
+
+    private IndexSegment writeSegment(int siteId, SegmentContent content) throws IOException {
+        if (segmentDir == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            IndexSegment.Writer writer = new IndexSegment.Writer(bytes);
+            content.writeTo(writer);
+            writer.finish();
+            byte[] data = bytes.toByteArray();
+            ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(data.length).put(data).flip() : ByteBuffer.wrap(data);
+            return IndexSegment.open(buffer);
+        }
+        Path file = segmentFile(siteId);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+            IndexSegment.Writer writer = new IndexSegment.Writer(out);
+            content.writeTo(writer);
+            writer.finish();
+        }
+        // старое отображение остаётся действительным до сборки мусора, новое видят следующие поиски
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return IndexSegment.map(file);
+    }
+
+    private Path segmentFile(int siteId) {
+        return segmentDir.resolve("site-" + siteId + ".seg");
+    }
+
+    // Integer.MIN_VALUE включает потоковое чтение результата в драйвере MySQL; другие драйверы (встроенная база
+    // бенчмарков) отрицательный fetch size отвергают
+    private static int streamingFetchSize(DataSource dataSource) {
+        try {
+            String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            return "MySQL".equalsIgnoreCase(product) ? Integer.MIN_VALUE : 1000;
+        } catch (MetaDataAccessException e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    private static Path createSegmentDir(String dir) {
+        if (dir == null || dir.isBlank()) {
+            return null;
+        }
+        try {
+            return Files.createDirectories(Path.of(dir));
+        } catch (IOException e) {
+            logger.warn("Каталог сегментов {} недоступен, индекс будет храниться в памяти: {}", dir, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SitesList;
+import searchengine.dto.search.SearchResponse;
+import searchengine.dto.search.SearchResult;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Кэш ответов поиска с LRU-вытеснением по оценке занимаемой памяти.
+ * Ключ — набор лемм, фразы, набор сайтов и окно выдачи (offset, limit). Вместе с ответом хранятся версии индекса
+ * сайтов ({@link SearchIndex#version}) на момент расчёта: если какой-то сайт с тех пор менялся, запись
+ * считается устаревшей и пересчитывается.
+ */
+@Component
+public class SearchResultCache {
+
+    public record Key(SortedSet<String> lemmas, List<String> phrases, SortedSet<Integer> siteIds, int offset, int limit) {
+    }
+
+    private record Entry(SearchResponse response, long[] versions, long weight) {
+    }
+
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+    private static final long RESULT_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final SearchIndex searchIndex;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    public SearchResultCache(SitesList sitesList, SearchIndex searchIndex) {
+        this.maxBytes = sitesList.getSearch().getResultCacheBytes();
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Возвращает ответ из кэша либо вычисляет его через loader. Кэшируются только успешные и полные ответы.
+     */
+    public SearchResponse get(Key key, Supplier<SearchResponse> loader) {
+        if (maxBytes <= 0) {
+            return loader.get();
+        }
+        // версии снимаются до расчёта: изменение во время расчёта сделает запись устаревшей
+        long[] versions = versionsOf(key);
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                if (Arrays.equals(cached.versions(), versions)) {
+                    hits.increment();
+                    return cached.response();
+                }
+                invalidations.increment();
+                remove(key);
+            }
+        }
+
+        misses.increment();
+        long started = System.nanoTime();
+        SearchResponse response = loader.get();
+        loadNanos.add(System.nanoTime() - started);
+        if (response.isResult() && !response.isPartial()) {
+            put(key, new Entry(response, versions, weightOf(key, response)));
+        }
+        return response;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        synchronized (this) {
+            metrics.put("entries", entries.size());
+            metrics.put("weightBytes", weight);
+        }
+        metrics.put("maxBytes", maxBytes);
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        metrics.put("evictions", evictions.sum());
+        metrics.put("invalidations", invalidations.sum());
+        metrics.put("averageLoadMs", missCount == 0 ? 0.0 : loadNanos.sum() / 1_000_000.0 / missCount);
+        return metrics;
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.weight() > maxBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, entry);
+        weight += entry.weight();
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight();
+        }
+    }
+
+    private long[] versionsOf(Key key) {
+        long[] versions = new long[key.siteIds().size()];
+        int i = 0;
+        for (Integer siteId : key.siteIds()) {
+            versions[i++] = searchIndex.version(siteId);
+        }
+        return versions;
+    }
+
+    // грубая оценка: строки в UTF-16 плюс накладные расходы объектов
+    private static long weightOf(Key key, SearchResponse response) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (String lemma : key.lemmas()) {
+            bytes += 48 + 2L * lemma.length();
+        }
+        bytes += 32L * key.siteIds().size();
+        if (response.getData() != null) {
+            for (SearchResult result : response.getData()) {
+                bytes += RESULT_OVERHEAD_BYTES + 2L * (length(result.getSite()) + length(result.getSiteName())
+                        + length(result.getUri()) + length(result.getTitle()) + length(result.getSnippet()));
+            }
+        }
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -2,6 +2,10 @@ package searchengine.services;
 
 import searchengine.dto.search.SearchResponse;
 
+import java.util.Map;
+
 public interface SearchService {
     SearchResponse search(String query, String site, int offset, int limit);
+
+    Map<String, Object> getMetrics();
 }
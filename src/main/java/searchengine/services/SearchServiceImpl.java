@@ -1,40 +1,113 @@
 package searchengine.services;
 
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import searchengine.dto.search.SearchResponse;
 import searchengine.dto.search.SearchResult;
 import searchengine.repository.PageRepository;
-import searchengine.repository.LemmaRepository;
-import searchengine.repository.IndexRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.utils.LemmaPositions;
 import searchengine.utils.LemmaProcessor;
 import searchengine.model.Page;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import searchengine.model.Site;
 import searchengine.config.ConfigSite ;
 import searchengine.config.SitesList ;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Comparator;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
 public class SearchServiceImpl implements SearchService {
+    private static final Logger logger = LoggerFactory.getLogger(SearchServiceImpl.class);
+    private static final Pattern PHRASE_PATTERN = Pattern.compile("\"([^\"]+)\"");
+    // сколько лучших страниц переупорядочивается с учётом близости слов
+    private static final int RERANK_DEPTH = 100;
+    private static final int PHRASE_BATCH_SIZE = 1000;
+
+    private record SiteMatches(List<SearchIndex.ScoredPage> ranked, int count, boolean partial) {
+    }
+
+    private record Phrase(List<String> keys, int[] gaps) {
+        private boolean matches(Map<String, LemmaPositions> pagePositions) {
+            List<LemmaPositions> terms = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                LemmaPositions lemmaPositions = pagePositions.get(key);
+                if (lemmaPositions == null) {
+                    return false;
+                }
+                terms.add(lemmaPositions);
+            }
+            return LemmaPositions.containsPhrase(terms, gaps);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < keys.size(); i++) {
+                text.append(i == 0 ? "" : " ").append(keys.get(i)).append('@').append(gaps[i]);
+            }
+            return text.toString();
+        }
+    }
 
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final SiteRepository siteRepository;
+    private final SearchIndex searchIndex;
     private final LemmaProcessor lemmaProcessor;
     private final SitesList sitesList;
+    private final SearchResultCache resultCache;
+    private final SnippetBuilder snippetBuilder;
+    private final LemmaPositionStore positionStore;
+    private final double proximityWeight;
+    private final long siteTimeoutMs;
+    private final ExecutorService searchExecutor;
+    private final LongAdder timedOutSites = new LongAdder();
 
-    public SearchServiceImpl(PageRepository pageRepository, LemmaRepository lemmaRepository,
-                             IndexRepository indexRepository, LemmaProcessor lemmaProcessor, SitesList sitesList) {
+    public SearchServiceImpl(PageRepository pageRepository, SiteRepository siteRepository,
+                             SearchIndex searchIndex, LemmaProcessor lemmaProcessor, SitesList sitesList,
+                             SearchResultCache resultCache, SnippetBuilder snippetBuilder,
+                             LemmaPositionStore positionStore) {
         this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
+        this.siteRepository = siteRepository;
+        this.searchIndex = searchIndex;
         this.lemmaProcessor = lemmaProcessor;
         this.sitesList = sitesList;
+        this.resultCache = resultCache;
+        this.snippetBuilder = snippetBuilder;
+        this.positionStore = positionStore;
+        this.proximityWeight = sitesList.getSearch().getProximityWeight();
+        this.siteTimeoutMs = sitesList.getSearch().getSiteTimeoutMs();
+        int threads = sitesList.getSearch().getThreads() > 0
+                ? sitesList.getSearch().getThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.searchExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "search-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
@@ -52,113 +125,304 @@ public class SearchServiceImpl implements SearchService {
                 .map(ConfigSite::getUrl)
                 .collect(Collectors.toList());
 
-        List<Page> pages = pageRepository.findPagesByLemmas(lemmas);
-        List<Page> pagesWithMatches = pages.stream()
-                .filter(page -> hasLemmasMatches(page, lemmas) && isSiteAllowed(page.getSite().getUrl(), allowedSites))
-                .collect(Collectors.toList());
-
-        if (site != null && !site.isEmpty()) {
-            pagesWithMatches = pagesWithMatches.stream()
-                    .filter(page -> page.getSite().getUrl().equalsIgnoreCase(site))
-                    .collect(Collectors.toList());
-        }
-
-        int totalCount = pagesWithMatches.size();
-
-        List<SearchResult> results = pagesWithMatches.stream()
-                .map(page -> new SearchResult(
-                        safeString(page.getSite().getUrl()),
-                        safeString(page.getSite().getName()),
-                        safeString(page.getPath()),
-                        buildTitleBlock(page),
-                        generateSnippet(page.getContent(), lemmas),
-                        calculateRelevance(page, lemmas)
-                ))
-                .sorted(Comparator.comparingDouble(SearchResult::getRelevance).reversed())
-                .skip(offset)
-                .limit(limit)
-                .collect(Collectors.toList());
+        Map<Integer, Site> sitesById = new HashMap<>();
+        for (Site activeSite : siteRepository.findAllByActiveTrue()) {
+            if (isSiteAllowed(activeSite.getUrl(), allowedSites)
+                    && (site == null || site.isEmpty() || activeSite.getUrl().equalsIgnoreCase(site))) {
+                sitesById.put(activeSite.getId(), activeSite);
+            }
+        }
 
-        return new SearchResponse(true, totalCount, results);
+        List<Phrase> phrases = parsePhrases(query);
+        offset = Math.max(offset, 0);
+        limit = Math.max(limit, 0);
+        SearchResultCache.Key key = new SearchResultCache.Key(new TreeSet<>(lemmas),
+                phrases.stream().map(Phrase::toString).toList(), new TreeSet<>(sitesById.keySet()), offset, limit);
+        int from = offset;
+        int size = limit;
+        return resultCache.get(key, () -> search(lemmas, phrases, sitesById, from, size));
     }
 
-    private boolean isSiteAllowed(String pageUrl, List<String> allowedSites) {
-        try {
-            URI pageUri = new URI(pageUrl);
-            String pageHost = pageUri.getHost();
+    private SearchResponse search(List<String> lemmas, List<Phrase> phrases, Map<Integer, Site> sitesById,
+                                  int offset, int limit) {
+        Set<String> keys = new LinkedHashSet<>();
+        lemmas.forEach(lemma -> keys.add(LemmaIndexWriter.collationKey(lemma)));
+        boolean rerank = keys.size() > 1 && proximityWeight > 0;
+        int end = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
 
-            if (pageHost == null) {
-                pageUrl = resolveFullUrl("https://default-site.com", pageUrl);
-                pageUri = new URI(pageUrl);
-                pageHost = pageUri.getHost();
+        // страницы, содержащие все леммы запроса, ищутся по индексу в памяти; хранятся только первые
+        // offset + limit по релевантности (для фраз — столько же подтверждённых по позициям),
+        // из базы читается и размечается сниппетами только запрошенная страница
+        int capacity = Math.max(end, rerank ? RERANK_DEPTH : 0);
+        SiteMatches matches = phrases.isEmpty()
+                ? searchSites(sitesById.keySet(), lemmas, capacity)
+                : searchPhrases(sitesById.keySet(), lemmas, phrases, capacity);
+        List<SearchIndex.ScoredPage> ranked = matches.ranked();
+        int totalCount = matches.count();
+
+        Map<Integer, Map<String, LemmaPositions>> positions = new HashMap<>();
+        if (rerank) {
+            ranked = new ArrayList<>(ranked);
+            List<SearchIndex.ScoredPage> head = ranked.subList(0, Math.min(RERANK_DEPTH, ranked.size()));
+            positions.putAll(loadPositions(head, lemmas));
+            // бонус только увеличивает релевантность, поэтому страницы за пределами head остаются ниже
+            head.replaceAll(match -> boostProximity(match, positions.get(match.pageId()), keys));
+            head.sort(SearchIndex.TopPages.BEST_FIRST);
+        }
+        List<SearchIndex.ScoredPage> pageOfResults =
+                ranked.subList(Math.min(offset, ranked.size()), Math.min(end, ranked.size()));
+        if (!rerank) {
+            positions.putAll(loadPositions(pageOfResults, lemmas));
+        }
+
+        Map<Integer, Page> pagesById = new HashMap<>();
+        pageRepository.findAllById(pageOfResults.stream().map(SearchIndex.ScoredPage::pageId).toList())
+                .forEach(page -> pagesById.put(page.getId(), page));
+
+        List<SearchResult> results = new ArrayList<>(pageOfResults.size());
+        for (SearchIndex.ScoredPage match : pageOfResults) {
+            Page page = pagesById.get(match.pageId());
+            if (page == null) {
+                continue;
             }
+            Site pageSite = sitesById.get(match.siteId());
+            results.add(new SearchResult(
+                    safeString(pageSite.getUrl()),
+                    safeString(pageSite.getName()),
+                    safeString(page.getPath()),
+                    buildTitleBlock(page),
+                    snippetBuilder.build(page.getContent(), lemmas, positions.get(match.pageId())),
+                    match.relevance()
+            ));
+        }
 
-            if (pageHost == null) return false;
+        return new SearchResponse(true, totalCount, results, matches.partial());
+    }
 
-            for (String allowed : allowedSites) {
-                URI allowedUri = new URI(allowed);
-                String allowedHost = allowedUri.getHost();
-                if (allowedHost != null && allowedHost.equalsIgnoreCase(pageHost)) {
-                    return true;
-                }
+    /**
+     * Ищет по каждому сайту отдельно и параллельно, затем сливает лучшие страницы сайтов. Время ответа
+     * определяется самым большим сайтом; сайты, не ответившие за site-timeout-ms, в выдачу не попадают.
+     * Ещё не загруженные индексы сайтов загружаются до начала отсчёта таймаута и без отмены: прерванная
+     * загрузка оставила бы сайт без индекса, а построение сегмента по базе может занять больше site-timeout-ms.
+     */
+    private SiteMatches searchSites(Collection<Integer> siteIds, List<String> lemmas, int capacity) {
+        if (siteIds.size() == 1) {
+            SearchIndex.TopPages top = new SearchIndex.TopPages(capacity);
+            searchIndex.search(siteIds.iterator().next(), lemmas, top);
+            return new SiteMatches(top.sorted(), top.count(), false);
+        }
+        loadSites(siteIds);
+        Map<Integer, Future<SearchIndex.TopPages>> futures = new LinkedHashMap<>();
+        for (Integer siteId : siteIds) {
+            futures.put(siteId, searchExecutor.submit(() -> {
+                SearchIndex.TopPages top = new SearchIndex.TopPages(capacity);
+                searchIndex.search(siteId, lemmas, top);
+                return top;
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(siteTimeoutMs);
+        List<List<SearchIndex.ScoredPage>> perSite = new ArrayList<>(futures.size());
+        int count = 0;
+        boolean partial = false;
+        for (Map.Entry<Integer, Future<SearchIndex.TopPages>> entry : futures.entrySet()) {
+            try {
+                SearchIndex.TopPages top = entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                perSite.add(top.sorted());
+                count += top.count();
+            } catch (TimeoutException e) {
+                // без прерывания: поиск только читает индекс, а начатая задача сама скоро завершится
+                entry.getValue().cancel(false);
+                partial = true;
+                timedOutSites.increment();
+                logger.warn("Поиск по сайту {} не уложился в {} мс, результаты неполные", entry.getKey(), siteTimeoutMs);
+            } catch (InterruptedException e) {
+                cancelAll(futures.values());
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Поиск прерван", e);
+            } catch (ExecutionException e) {
+                cancelAll(futures.values());
+                throw new IllegalStateException("Ошибка поиска по сайту " + entry.getKey(), e.getCause());
             }
-        } catch (URISyntaxException e) {
-            System.err.println("Ошибка разбора URL: " + pageUrl);
         }
-        return false;
+        return new SiteMatches(SearchIndex.TopPages.merge(perSite, capacity), count, partial);
     }
 
-    private boolean hasLemmasMatches(Page page, List<String> lemmas) {
-        String content = page.getContent().toLowerCase();
-        for (String lemma : lemmas) {
-            String pattern = "\\b" + Pattern.quote(lemma.toLowerCase()) + "\\b"; // Ограничиваем поиск границами слов
-            if (!content.matches(".*" + pattern + ".*")) {
-                return false;
+    private void loadSites(Collection<Integer> siteIds) {
+        Map<Integer, Future<?>> loads = new LinkedHashMap<>();
+        for (Integer siteId : siteIds) {
+            if (!searchIndex.isLoaded(siteId)) {
+                loads.put(siteId, searchExecutor.submit(() -> searchIndex.ensureLoaded(siteId)));
+            }
+        }
+        for (Map.Entry<Integer, Future<?>> entry : loads.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (InterruptedException e) {
+                cancelAll(loads.values());
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Поиск прерван", e);
+            } catch (ExecutionException e) {
+                cancelAll(loads.values());
+                throw new IllegalStateException("Ошибка загрузки индекса сайта " + entry.getKey(), e.getCause());
             }
         }
-        return true;
     }
 
-    private String generateSnippet(String content, List<String> lemmas) {
-        int snippetLength = 200;
-        String lowerContent = content.toLowerCase();
+    // без прерывания: начатые задачи доработают, ещё не начатые не запустятся
+    private static void cancelAll(Collection<? extends Future<?>> futures) {
+        futures.forEach(future -> future.cancel(false));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchExecutor.shutdownNow();
+    }
 
-        List<Integer> lemmaPositions = new ArrayList<>();
-        for (String lemma : lemmas) {
-            String pattern = "\\b" + Pattern.quote(lemma.toLowerCase()) + "\\b"; // Используем границы слова
-            Matcher matcher = Pattern.compile(pattern).matcher(lowerContent);
-            while (matcher.find()) {
-                lemmaPositions.add(matcher.start());
+    /**
+     * Фразы запроса в кавычках: ключи лемм по порядку и расстояние в словах от первой леммы
+     * (служебные слова внутри фразы тоже занимают позицию).
+     */
+    private List<Phrase> parsePhrases(String query) {
+        List<Phrase> phrases = new ArrayList<>();
+        Matcher matcher = PHRASE_PATTERN.matcher(query);
+        while (matcher.find()) {
+            TreeMap<Integer, String> words = new TreeMap<>();
+            lemmaProcessor.collectLemmaPositions(matcher.group(1)).forEach((lemma, lemmaPositions) -> {
+                for (int i = 0; i < lemmaPositions.size(); i++) {
+                    words.put(lemmaPositions.ordinal(i), LemmaIndexWriter.collationKey(lemma));
+                }
+            });
+            if (words.size() < 2) {
+                continue;
             }
+            int first = words.firstKey();
+            int[] gaps = words.keySet().stream().mapToInt(ordinal -> ordinal - first).toArray();
+            phrases.add(new Phrase(new ArrayList<>(words.values()), gaps));
         }
+        return phrases;
+    }
+
+    /**
+     * Страницы, где все фразы стоят подряд: кандидаты (страницы со всеми леммами) проверяются по позициям
+     * в порядке релевантности, пока не наберётся needed совпадений. Если лучших кандидатов не хватило,
+     * их число увеличивается и поиск по индексу повторяется; уже проверенные страницы не проверяются снова.
+     * Когда проверены не все кандидаты, общее число найденных оценивается по доле совпавших среди проверенных.
+     */
+    private SiteMatches searchPhrases(Collection<Integer> siteIds, List<String> lemmas, List<Phrase> phrases,
+                                      int needed) {
+        // хотя бы одно совпадение нужно и при limit = 0: по нему оценивается общее число
+        needed = Math.max(needed, 1);
+        List<SearchIndex.ScoredPage> matched = new ArrayList<>();
+        Set<SearchIndex.ScoredPage> checked = new HashSet<>();
+        int capacity = Math.max(needed, PHRASE_BATCH_SIZE);
+        while (true) {
+            SiteMatches candidates = searchSites(siteIds, lemmas, capacity);
+            List<SearchIndex.ScoredPage> unchecked = new ArrayList<>();
+            for (SearchIndex.ScoredPage candidate : candidates.ranked()) {
+                if (!checked.contains(candidate)) {
+                    unchecked.add(candidate);
+                }
+            }
+            int from = 0;
+            while (from < unchecked.size() && matched.size() < needed) {
+                // пакет по числу недостающих совпадений: для первой страницы выдачи позиции читаются у немногих страниц
+                int batchSize = Math.min(PHRASE_BATCH_SIZE, Math.max(needed - matched.size(), 1) * 2);
+                List<SearchIndex.ScoredPage> batch = unchecked.subList(from, Math.min(from + batchSize, unchecked.size()));
+                matched.addAll(filterPhrases(batch, phrases, lemmas));
+                checked.addAll(batch);
+                from += batch.size();
+            }
 
-        if (lemmaPositions.isEmpty()) {
-            return "...Совпадений не найдено...";
+            boolean allCandidates = candidates.ranked().size() >= candidates.count();
+            if (matched.size() >= needed || allCandidates || capacity == Integer.MAX_VALUE) {
+                matched.sort(SearchIndex.TopPages.BEST_FIRST);
+                int count = matched.size();
+                if (!allCandidates || from < unchecked.size()) {
+                    count = (int) Math.max(count, Math.round((double) count * candidates.count() / Math.max(1, checked.size())));
+                }
+                return new SiteMatches(matched, count, candidates.partial());
+            }
+            capacity = (int) Math.min((long) capacity * 4, Integer.MAX_VALUE);
         }
+    }
 
-        int start = Math.max(lemmaPositions.get(0) - 50, 0);
-        int end = Math.min(start + snippetLength, content.length());
+    /**
+     * Оставляет страницы, где все фразы стоят подряд; страницы без сохранённых позиций фразе не соответствуют.
+     */
+    private List<SearchIndex.ScoredPage> filterPhrases(List<SearchIndex.ScoredPage> candidates, List<Phrase> phrases,
+                                                       List<String> lemmas) {
+        List<SearchIndex.ScoredPage> matched = new ArrayList<>();
+        Map<Integer, Map<String, LemmaPositions>> positions = loadPositions(candidates, lemmas);
+        for (SearchIndex.ScoredPage candidate : candidates) {
+            Map<String, LemmaPositions> pagePositions = positions.get(candidate.pageId());
+            if (pagePositions != null && phrases.stream().allMatch(phrase -> phrase.matches(pagePositions))) {
+                matched.add(candidate);
+            }
+        }
+        return matched;
+    }
 
-        String snippet = content.substring(start, end);
+    private Map<Integer, Map<String, LemmaPositions>> loadPositions(List<SearchIndex.ScoredPage> pages, List<String> lemmas) {
+        Map<Integer, List<Integer>> pageIdsBySite = new HashMap<>();
+        for (SearchIndex.ScoredPage page : pages) {
+            pageIdsBySite.computeIfAbsent(page.siteId(), id -> new ArrayList<>()).add(page.pageId());
+        }
+        Map<Integer, Map<String, LemmaPositions>> positions = new HashMap<>();
+        pageIdsBySite.forEach((siteId, pageIds) -> positions.putAll(positionStore.load(siteId, pageIds, lemmas)));
+        return positions;
+    }
 
-        for (String lemma : lemmas) {
-            String pattern = "\\b" + Pattern.quote(lemma) + "\\b"; // Экранируем лемму и ищем полные слова
-            snippet = snippet.replaceAll("(?i)" + pattern, "<b>$0</b>");
+    /**
+     * Чем ближе друг к другу леммы запроса на странице, тем больше релевантность: до (1 + proximity-weight) раз,
+     * когда они стоят подряд.
+     */
+    private SearchIndex.ScoredPage boostProximity(SearchIndex.ScoredPage match, Map<String, LemmaPositions> pagePositions,
+                                                  Set<String> keys) {
+        if (pagePositions == null || !pagePositions.keySet().containsAll(keys)) {
+            return match;
         }
+        List<LemmaPositions> terms = new ArrayList<>(keys.size());
+        keys.forEach(key -> terms.add(pagePositions.get(key)));
+        int adjacentSpan = keys.size() - 1;
+        int span = Math.max(LemmaPositions.minimalSpan(terms), adjacentSpan);
+        double boost = 1 + proximityWeight * adjacentSpan / span;
+        return new SearchIndex.ScoredPage(match.siteId(), match.pageId(), match.relevance() * boost);
+    }
 
-        return "..." + snippet + "...";
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("index", searchIndex.getMetrics());
+        metrics.put("resultCache", resultCache.getMetrics());
+        metrics.put("timedOutSites", timedOutSites.sum());
+        return metrics;
     }
 
-    private double calculateRelevance(Page page, List<String> lemmas) {
-        String content = page.getContent().toLowerCase();
-        double relevance = 0.0;
+    private boolean isSiteAllowed(String pageUrl, List<String> allowedSites) {
+        try {
+            URI pageUri = new URI(pageUrl);
+            String pageHost = pageUri.getHost();
 
-        for (String lemma : lemmas) {
-            String lowerLemma = lemma.toLowerCase();
-            relevance += content.split(Pattern.quote(lowerLemma), -1).length - 1;
-        }
+            if (pageHost == null) {
+                pageUrl = resolveFullUrl("https://default-site.com", pageUrl);
+                pageUri = new URI(pageUrl);
+                pageHost = pageUri.getHost();
+            }
+
+            if (pageHost == null) return false;
 
-        return relevance;
+            for (String allowed : allowedSites) {
+                URI allowedUri = new URI(allowed);
+                String allowedHost = allowedUri.getHost();
+                if (allowedHost != null && allowedHost.equalsIgnoreCase(pageHost)) {
+                    return true;
+                }
+            }
+        } catch (URISyntaxException e) {
+            System.err.println("Ошибка разбора URL: " + pageUrl);
+        }
+        return false;
     }
 
     private String safeString(String value) {
@@ -0,0 +1,164 @@
+package searchengine.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConfigSite;
+import searchengine.model.IndexingStatus;
+import searchengine.model.Site;
+import searchengine.repository.SiteRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Поколения сайта: полная переиндексация пишет в новую (теневую) строку site, пока поиск работает по активной.
+ * По завершении обхода активное поколение переключается одним UPDATE, а старое удаляется в фоне
+ * небольшими порциями, чтобы не держать долгих блокировок на таблице `index`.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class SiteGenerations {
+    private static final Logger logger = LoggerFactory.getLogger(SiteGenerations.class);
+    private static final int PAGE_CHUNK_SIZE = 100;
+    private static final int ROW_CHUNK_SIZE = 5_000;
+
+    private static final String ACTIVATE = "UPDATE site SET active = (id = ?) WHERE url = ?";
+    private static final String SELECT_STALE = "SELECT s.id FROM site s WHERE s.active = FALSE AND EXISTS " +
+            "(SELECT 1 FROM site a WHERE a.url = s.url AND a.active = TRUE AND a.generation > s.generation)";
+    private static final String SELECT_PAGE_CHUNK = "SELECT id FROM page WHERE site_id = ? ORDER BY id LIMIT ?";
+    private static final String DELETE_INDEXES_PREFIX = "DELETE FROM `index` WHERE page_id IN (";
+    private static final String DELETE_PAGES_PREFIX = "DELETE FROM page WHERE id IN (";
+    private static final String DELETE_LEMMAS = "DELETE FROM lemma WHERE site_id = ? LIMIT ?";
+    private static final String DELETE_FRONTIER = "DELETE FROM crawl_frontier WHERE site_id = ? LIMIT ?";
+    private static final String DELETE_SITE = "DELETE FROM site WHERE id = ? AND active = FALSE";
+    private static final String SELECT_LEGACY_URL_KEYS = "SELECT index_name FROM information_schema.statistics " +
+            "WHERE table_schema = DATABASE() AND table_name = 'site' AND non_unique = 0 AND index_name <> 'PRIMARY' " +
+            "GROUP BY index_name HAVING COUNT(*) = 1 AND MAX(column_name) = 'url'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SiteRepository siteRepository;
+    private final PagePathIndex pagePathIndex;
+    private final SearchIndex searchIndex;
+    private final ExecutorService cleaner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "site-generation-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SiteGenerations(JdbcTemplate jdbcTemplate, SiteRepository siteRepository, PagePathIndex pagePathIndex,
+                           SearchIndex searchIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.siteRepository = siteRepository;
+        this.pagePathIndex = pagePathIndex;
+        this.searchIndex = searchIndex;
+    }
+
+    @PostConstruct
+    public void init() {
+        // ddl-auto: update не удаляет прежний уникальный ключ по одному url, мешающий хранить два поколения
+        try {
+            for (String key : jdbcTemplate.queryForList(SELECT_LEGACY_URL_KEYS, String.class)) {
+                jdbcTemplate.execute("ALTER TABLE site DROP INDEX `" + key + "`");
+                logger.info("Удалён уникальный ключ {} таблицы site", key);
+            }
+        } catch (Exception e) {
+            logger.warn("Не удалось проверить уникальные ключи таблицы site: {}", e.getMessage());
+        }
+        // поколения, удаление которых прервал перезапуск приложения
+        try {
+            jdbcTemplate.queryForList(SELECT_STALE, Integer.class).forEach(this::deleteAsync);
+        } catch (Exception e) {
+            logger.warn("Не удалось найти устаревшие поколения сайтов: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * Создаёт новое поколение сайта для полной переиндексации. Брошенные теневые поколения прошлых запусков
+     * удаляются. Если активного поколения ещё нет, новое сразу становится активным.
+     */
+    public Site createShadow(ConfigSite configSite) {
+        boolean hasActive = false;
+        int nextGeneration = 0;
+        for (Site existing : siteRepository.findAllByUrl(configSite.getUrl())) {
+            if (existing.isActive()) {
+                hasActive = true;
+            } else {
+                deleteAsync(existing.getId());
+            }
+            nextGeneration = Math.max(nextGeneration, existing.getGeneration() + 1);
+        }
+
+        Site shadow = new Site();
+        shadow.setName(configSite.getName());
+        shadow.setUrl(configSite.getUrl());
+        shadow.setGeneration(nextGeneration);
+        shadow.setActive(!hasActive);
+        shadow.setStatus(IndexingStatus.INDEXING);
+        shadow.setStatusTime(LocalDateTime.now());
+        return siteRepository.save(shadow);
+    }
+
+    /**
+     * Атомарно делает поколение активным и ставит остальные поколения сайта в очередь на удаление.
+     */
+    public void activate(Site site) {
+        List<Integer> retired = siteRepository.findAllByUrl(site.getUrl()).stream()
+                .map(Site::getId)
+                .filter(id -> id != site.getId())
+                .toList();
+        jdbcTemplate.update(ACTIVATE, site.getId(), site.getUrl());
+        site.setActive(true);
+        logger.info("Сайт {}: активно поколение {}", site.getUrl(), site.getGeneration());
+        retired.forEach(this::deleteAsync);
+    }
+
+    public void deleteAsync(int siteId) {
+        cleaner.submit(() -> {
+            try {
+                delete(siteId);
+            } catch (Exception e) {
+                logger.error("Ошибка удаления поколения сайта {}: {}", siteId, e.getMessage(), e);
+            }
+        });
+    }
+
+    // Каждая порция выполняется отдельной короткой транзакцией (autocommit)
+    private void delete(int siteId) {
+        pagePathIndex.evict(siteId);
+        searchIndex.remove(siteId);
+        long pages = 0;
+        long indexes = 0;
+        List<Integer> pageIds;
+        while (!(pageIds = jdbcTemplate.queryForList(SELECT_PAGE_CHUNK, Integer.class, siteId, PAGE_CHUNK_SIZE)).isEmpty()) {
+            String placeholders = String.join(", ", Collections.nCopies(pageIds.size(), "?")) + ")";
+            indexes += jdbcTemplate.update(DELETE_INDEXES_PREFIX + placeholders, pageIds.toArray());
+            pages += jdbcTemplate.update(DELETE_PAGES_PREFIX + placeholders, pageIds.toArray());
+        }
+        long lemmas = deleteInChunks(DELETE_LEMMAS, siteId);
+        deleteInChunks(DELETE_FRONTIER, siteId);
+        jdbcTemplate.update(DELETE_SITE, siteId);
+        logger.info("Удалено поколение сайта {}: {} страниц, {} индексов, {} лемм", siteId, pages, indexes, lemmas);
+    }
+
+    private long deleteInChunks(String sql, int siteId) {
+        long total = 0;
+        int deleted;
+        while ((deleted = jdbcTemplate.update(sql, siteId, ROW_CHUNK_SIZE)) > 0) {
+            total += deleted;
+        }
+        return total;
+    }
+}
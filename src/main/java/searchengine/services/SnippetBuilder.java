@@ -0,0 +1,198 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.utils.LemmaPositions;
+import searchengine.utils.LemmaProcessor;
+
+import java.util.*;
+
+/**
+ * Сниппеты для выдачи. Слово совпадает с запросом, если совпадает его лемма (любая словоформа).
+ * Выбирается окно с наибольшим числом разных лемм запроса, совпадения в нём выделяются &lt;b&gt; при сборке строки.
+ * <p>
+ * Если известны сохранённые позиции лемм страницы, окно выбирается по ним без разбора текста. Иначе текст
+ * разбивается на слова за один проход: просматриваются только первые {@link #MAX_SCAN_CHARS} символов,
+ * проход останавливается, как только в окне есть все леммы.
+ */
+@Component
+public class SnippetBuilder {
+    static final int SNIPPET_LENGTH = 200;
+    static final int MAX_SCAN_CHARS = 100_000;
+    private static final int CONTEXT_BEFORE = 40;
+    // на сколько символов можно сдвинуть границу окна, чтобы не резать слово
+    private static final int MAX_WORD_TAIL = 30;
+
+    private record Match(int start, int end, int lemma) {
+    }
+
+    /**
+     * Скользящее окно совпадений длиной не больше SNIPPET_LENGTH; совпадения подаются по возрастанию start.
+     */
+    private static final class WindowSelector {
+        private final List<Match> matches = new ArrayList<>();
+        private final ArrayDeque<Match> window = new ArrayDeque<>();
+        private final int[] counts;
+        private int distinct;
+        private int bestDistinct;
+        private int bestSize;
+        private int bestStart;
+        private int bestEnd;
+
+        private WindowSelector(int lemmaCount) {
+            counts = new int[lemmaCount];
+        }
+
+        private void offer(Match match) {
+            matches.add(match);
+            window.addLast(match);
+            if (counts[match.lemma()]++ == 0) {
+                distinct++;
+            }
+            while (match.end() - window.peekFirst().start() > SNIPPET_LENGTH) {
+                if (--counts[window.pollFirst().lemma()] == 0) {
+                    distinct--;
+                }
+            }
+            if (distinct > bestDistinct || distinct == bestDistinct && window.size() > bestSize) {
+                bestDistinct = distinct;
+                bestSize = window.size();
+                bestStart = window.peekFirst().start();
+                bestEnd = match.end();
+            }
+        }
+
+        // после того как найдены все леммы, нужны только слова, попадающие в лучшее окно
+        private boolean isComplete(int position) {
+            return bestDistinct == counts.length && position > bestStart + SNIPPET_LENGTH + MAX_WORD_TAIL;
+        }
+    }
+
+    private final LemmaProcessor lemmaProcessor;
+
+    public SnippetBuilder(LemmaProcessor lemmaProcessor) {
+        this.lemmaProcessor = lemmaProcessor;
+    }
+
+    public String build(String text, Collection<String> lemmas) {
+        return build(text, lemmas, null);
+    }
+
+    /**
+     * @param positions позиции лемм страницы по ключу леммы ({@link LemmaPositionStore}); null — разобрать текст
+     */
+    public String build(String text, Collection<String> lemmas, Map<String, LemmaPositions> positions) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        for (String lemma : lemmas) {
+            lemmaIds.putIfAbsent(LemmaIndexWriter.collationKey(lemma), lemmaIds.size());
+        }
+        WindowSelector selector = new WindowSelector(lemmaIds.size());
+        if (positions != null && !positions.isEmpty()) {
+            selectStored(text, lemmaIds, positions, selector);
+        } else {
+            selectScanned(text, lemmaIds, selector);
+        }
+
+        if (selector.matches.isEmpty()) {
+            return "..." + escape(text, 0, wordEnd(text, Math.min(text.length(), SNIPPET_LENGTH))) + "...";
+        }
+        int from = wordStart(text, Math.max(0, selector.bestStart - CONTEXT_BEFORE));
+        int to = wordEnd(text, Math.min(text.length(), Math.max(from + SNIPPET_LENGTH, selector.bestEnd)));
+        return highlight(text, from, to, selector.matches);
+    }
+
+    private static void selectStored(String text, Map<String, Integer> lemmaIds,
+                                     Map<String, LemmaPositions> positions, WindowSelector selector) {
+        List<Match> stored = new ArrayList<>();
+        lemmaIds.forEach((key, lemmaId) -> {
+            LemmaPositions lemmaPositions = positions.get(key);
+            for (int i = 0; lemmaPositions != null && i < lemmaPositions.size(); i++) {
+                int start = lemmaPositions.offset(i);
+                if (start < text.length()) {
+                    stored.add(new Match(start, letterRunEnd(text, start), lemmaId));
+                }
+            }
+        });
+        stored.sort(Comparator.comparingInt(Match::start));
+        for (Match match : stored) {
+            selector.offer(match);
+        }
+    }
+
+    private void selectScanned(String text, Map<String, Integer> lemmaIds, WindowSelector selector) {
+        int scanEnd = Math.min(text.length(), MAX_SCAN_CHARS);
+        int position = 0;
+        while (position < scanEnd && !selector.isComplete(position)) {
+            int codePoint = text.codePointAt(position);
+            if (!Character.isLetter(codePoint)) {
+                position += Character.charCount(codePoint);
+                continue;
+            }
+            int start = position;
+            position = letterRunEnd(text, start);
+            String lemma = lemmaProcessor.lemmatize(text.substring(start, position).toLowerCase());
+            Integer lemmaId = lemma != null ? lemmaIds.get(LemmaIndexWriter.collationKey(lemma)) : null;
+            if (lemmaId != null) {
+                selector.offer(new Match(start, position, lemmaId));
+            }
+        }
+    }
+
+    private static String highlight(String text, int from, int to, List<Match> matches) {
+        StringBuilder snippet = new StringBuilder(to - from + 64);
+        snippet.append(from > 0 ? "..." : "");
+        int position = from;
+        for (Match match : matches) {
+            if (match.start() < position || match.end() > to) {
+                continue;
+            }
+            snippet.append(escape(text, position, match.start()))
+                    .append("<b>").append(escape(text, match.start(), match.end())).append("</b>");
+            position = match.end();
+        }
+        snippet.append(escape(text, position, to));
+        return snippet.append(to < text.length() ? "..." : "").toString();
+    }
+
+    private static int letterRunEnd(String text, int position) {
+        int codePoint;
+        while (position < text.length() && Character.isLetter(codePoint = text.codePointAt(position))) {
+            position += Character.charCount(codePoint);
+        }
+        return position;
+    }
+
+    private static int wordStart(String text, int position) {
+        int limit = Math.max(0, position - MAX_WORD_TAIL);
+        int start = position;
+        while (start > limit && !Character.isWhitespace(text.charAt(start - 1))) {
+            start--;
+        }
+        return start > 0 && !Character.isWhitespace(text.charAt(start - 1)) ? position : start;
+    }
+
+    private static int wordEnd(String text, int position) {
+        int limit = Math.min(text.length(), position + MAX_WORD_TAIL);
+        int end = position;
+        while (end < limit && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        return end < text.length() && !Character.isWhitespace(text.charAt(end)) ? position : end;
+    }
+
+    private static String escape(String text, int from, int to) {
+        StringBuilder escaped = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
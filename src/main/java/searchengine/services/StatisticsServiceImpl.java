@@ -23,26 +23,36 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final SitesList sitesList;
+    private final IndexingService indexingService;
 
+    /**
+     * Число страниц и лемм берётся из активного поколения сайта (его видит поиск), а статус, время статуса
+     * и ошибка — из самого нового: во время полной переиндексации это теневое поколение, и его INDEXING
+     * или FAILED с ошибкой должны быть видны на панели.
+     */
     @Override
     public StatisticsResponse getStatistics() {
-        List<Site> siteList = siteRepository.findAll();
+        List<Site> siteList = siteRepository.findAllByActiveTrue();
 
         TotalStatistics total = new TotalStatistics();
         total.setSites(siteList.size());
-        total.setIndexing(false);
+        total.setIndexing(indexingService.isIndexingInProgress());
 
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
 
         for (Site site : siteList) {
+            Site newest = siteRepository.findFirstByUrlOrderByGenerationDesc(site.getUrl());
+            if (newest == null) {
+                newest = site;
+            }
             DetailedStatisticsItem item = new DetailedStatisticsItem();
             item.setName(site.getName());
             item.setUrl(site.getUrl());
             item.setPages(pageRepository.countBySite(site));
             item.setLemmas(lemmaRepository.countBySite(site));
-            item.setStatus(site.getStatus().toString());
-            item.setError(site.getLastError() != null ? site.getLastError() : "");
-            item.setStatusTime(site.getStatusTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+            item.setStatus(newest.getStatus().toString());
+            item.setError(newest.getLastError() != null ? newest.getLastError() : "");
+            item.setStatusTime(newest.getStatusTime().toInstant(ZoneOffset.UTC).toEpochMilli());
 
             total.setPages(total.getPages() + item.getPages());
             total.setLemmas(total.getLemmas() + item.getLemmas());
@@ -81,7 +91,7 @@ public class StatisticsServiceImpl implements StatisticsService {
         total.setSites(1);  // Один сайт
         total.setPages(item.getPages());
         total.setLemmas(item.getLemmas());
-        total.setIndexing(false);
+        total.setIndexing(indexingService.isIndexingInProgress());
 
         StatisticsResponse response = new StatisticsResponse();
         StatisticsData data = new StatisticsData();
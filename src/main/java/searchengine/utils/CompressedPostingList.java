@@ -0,0 +1,221 @@
+package searchengine.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Неизменяемый сжатый список вхождений поверх ByteBuffer (в куче, direct или отображённого файла).
+ * Вхождения разбиты на блоки по {@link #BLOCK_SIZE}: id страниц в блоке хранятся разностями в varint,
+ * rank — varint целого значения (rank в индексе — число упоминаний леммы) или, если в блоке есть дробные
+ * значения, 4 байтами float. Первые id блоков и их смещения хранятся перед данными и служат указателями
+ * пропуска при пересечении списков.
+ * <pre>
+ * int size | int blockCount | int[blockCount] firstIds | int[blockCount] offsets | данные блоков
+ * </pre>
+ */
+public final class CompressedPostingList {
+    public static final int BLOCK_SIZE = 128;
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final byte RANKS_VARINT = 0;
+    private static final byte RANKS_FLOAT = 1;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int blockCount;
+    private final int dataStart;
+
+    private CompressedPostingList(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(0);
+        this.blockCount = buffer.getInt(Integer.BYTES);
+        this.dataStart = HEADER_BYTES + blockCount * 2 * Integer.BYTES;
+    }
+
+    public static CompressedPostingList wrap(ByteBuffer buffer) {
+        return new CompressedPostingList(buffer);
+    }
+
+    public static byte[] encode(PostingList list) {
+        list.seal();
+        int size = list.size();
+        int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blockFirstIds = new int[blockCount];
+        int[] blockOffsets = new int[blockCount];
+        byte[] data = new byte[blockCount + size * 10];
+        int position = 0;
+
+        for (int block = 0; block < blockCount; block++) {
+            int from = block * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, size);
+            blockFirstIds[block] = list.pageId(from);
+            blockOffsets[block] = position;
+
+            boolean integral = true;
+            for (int i = from; i < to && integral; i++) {
+                float rank = list.rank(i);
+                integral = rank >= 0 && rank <= Integer.MAX_VALUE && rank == (int) rank;
+            }
+            data[position++] = integral ? RANKS_VARINT : RANKS_FLOAT;
+            for (int i = from + 1; i < to; i++) {
+                position = writeVarInt(data, position, list.pageId(i) - list.pageId(i - 1));
+            }
+            for (int i = from; i < to; i++) {
+                if (integral) {
+                    position = writeVarInt(data, position, (int) list.rank(i));
+                } else {
+                    int bits = Float.floatToRawIntBits(list.rank(i));
+                    data[position++] = (byte) (bits >>> 24);
+                    data[position++] = (byte) (bits >>> 16);
+                    data[position++] = (byte) (bits >>> 8);
+                    data[position++] = (byte) bits;
+                }
+            }
+        }
+
+        ByteBuffer encoded = ByteBuffer.allocate(HEADER_BYTES + blockCount * 2 * Integer.BYTES + position);
+        encoded.putInt(size).putInt(blockCount);
+        for (int firstId : blockFirstIds) {
+            encoded.putInt(firstId);
+        }
+        for (int offset : blockOffsets) {
+            encoded.putInt(offset);
+        }
+        encoded.put(data, 0, position);
+        return encoded.array();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Дописывает все вхождения в список (для слияния и перестроения).
+     */
+    public void decodeInto(PostingList target) {
+        int[] ids = new int[BLOCK_SIZE];
+        float[] ranks = new float[BLOCK_SIZE];
+        for (int block = 0; block < blockCount; block++) {
+            int count = decodeBlock(block, ids, ranks);
+            for (int i = 0; i < count; i++) {
+                target.append(ids[i], ranks[i]);
+            }
+        }
+    }
+
+    public PostingCursor cursor() {
+        return new BlockCursor();
+    }
+
+    private int firstId(int block) {
+        return buffer.getInt(HEADER_BYTES + block * Integer.BYTES);
+    }
+
+    private int decodeBlock(int block, int[] ids, float[] ranks) {
+        int count = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+        int position = dataStart + buffer.getInt(HEADER_BYTES + (blockCount + block) * Integer.BYTES);
+        byte mode = buffer.get(position++);
+        ids[0] = firstId(block);
+        for (int i = 1; i < count; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            ids[i] = ids[i - 1] + value;
+        }
+        for (int i = 0; i < count; i++) {
+            if (mode == RANKS_VARINT) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    value |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                ranks[i] = value;
+            } else {
+                ranks[i] = Float.intBitsToFloat(buffer.getInt(position));
+                position += 4;
+            }
+        }
+        return count;
+    }
+
+    private static int writeVarInt(byte[] buffer, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private final class BlockCursor implements PostingCursor {
+        private final int[] ids = new int[BLOCK_SIZE];
+        private final float[] ranks = new float[BLOCK_SIZE];
+        private int block = -1;
+        private int count;
+        private int position;
+        private boolean exhausted = size == 0;
+
+        @Override
+        public int advance(int target) {
+            if (exhausted) {
+                return NO_MORE;
+            }
+            if (block < 0 || ids[count - 1] < target) {
+                // в текущем блоке нужного id нет: указатели пропуска дают последний блок, начинающийся не позже target
+                int from = block + 1;
+                if (from >= blockCount) {
+                    exhausted = true;
+                    return NO_MORE;
+                }
+                int next = lastBlockStartingAtOrBefore(target, from);
+                load(next);
+                if (ids[count - 1] < target) {
+                    if (next + 1 >= blockCount) {
+                        exhausted = true;
+                        return NO_MORE;
+                    }
+                    load(next + 1);
+                    return ids[0];
+                }
+            }
+            int found = Arrays.binarySearch(ids, position, count, target);
+            position = found >= 0 ? found : -found - 1;
+            return ids[position];
+        }
+
+        @Override
+        public float rank() {
+            return ranks[position];
+        }
+
+        private int lastBlockStartingAtOrBefore(int target, int from) {
+            int low = from;
+            int high = blockCount - 1;
+            int result = from;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (firstId(middle) <= target) {
+                    result = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return result;
+        }
+
+        private void load(int next) {
+            block = next;
+            count = decodeBlock(next, ids, ranks);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package searchengine.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Неизменяемый сегмент поискового индекса сайта: словарь лемм и их сжатые списки вхождений
+ * ({@link CompressedPostingList}) в одном буфере. Буфер может быть отображённым в память файлом
+ * ({@link #map(Path)}) — тогда списки читаются прямо из страничного кэша без копирования в кучу.
+ * <pre>
+ * списки вхождений | ключи (UTF-8) | записи словаря | футер
+ * запись словаря: int keyOffset | int keyLength | int postingsOffset | int postingsLength
+ * футер: int magic | int version | int lemmaCount | long postingCount | long pageIdSum | double rankSum
+ *        | int keysOffset | int entriesOffset
+ * </pre>
+ * Записи словаря упорядочены по байтам ключа (без знака), поиск леммы — двоичный.
+ */
+public final class IndexSegment {
+    private static final int MAGIC = 0x53454731;
+    private static final int VERSION = 1;
+    private static final int ENTRY_BYTES = 4 * Integer.BYTES;
+    private static final int FOOTER_BYTES = 5 * Integer.BYTES + 2 * Long.BYTES + Double.BYTES;
+
+    private static final IndexSegment EMPTY = new IndexSegment(null, 0, 0, 0, 0, 0, 0, false);
+
+    private final ByteBuffer buffer;
+    private final int lemmaCount;
+    private final long postingCount;
+    private final long pageIdSum;
+    private final double rankSum;
+    private final int keysOffset;
+    private final int entriesOffset;
+    private final boolean mapped;
+
+    private IndexSegment(ByteBuffer buffer, int lemmaCount, long postingCount, long pageIdSum, double rankSum,
+                         int keysOffset, int entriesOffset, boolean mapped) {
+        this.buffer = buffer;
+        this.lemmaCount = lemmaCount;
+        this.postingCount = postingCount;
+        this.pageIdSum = pageIdSum;
+        this.rankSum = rankSum;
+        this.keysOffset = keysOffset;
+        this.entriesOffset = entriesOffset;
+        this.mapped = mapped;
+    }
+
+    public static IndexSegment empty() {
+        return EMPTY;
+    }
+
+    public static IndexSegment open(ByteBuffer buffer) throws IOException {
+        return open(buffer, false);
+    }
+
+    public static IndexSegment map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Сегмент больше 2 ГБ: " + file);
+            }
+            // отображение остаётся действительным после закрытия канала
+            return open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), true);
+        }
+    }
+
+    private static IndexSegment open(ByteBuffer buffer, boolean mapped) throws IOException {
+        int footer = buffer.limit() - FOOTER_BYTES;
+        if (footer < 0 || buffer.getInt(footer) != MAGIC || buffer.getInt(footer + 4) != VERSION) {
+            throw new IOException("Неверный формат сегмента индекса");
+        }
+        return new IndexSegment(buffer,
+                buffer.getInt(footer + 8),
+                buffer.getLong(footer + 12),
+                buffer.getLong(footer + 20),
+                buffer.getDouble(footer + 28),
+                buffer.getInt(footer + 36),
+                buffer.getInt(footer + 40),
+                mapped);
+    }
+
+    public CompressedPostingList get(String key) {
+        if (lemmaCount == 0) {
+            return null;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareKey(middle, keyBytes);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return postings(middle);
+            }
+        }
+        return null;
+    }
+
+    public int lemmaCount() {
+        return lemmaCount;
+    }
+
+    public byte[] keyBytes(int entry) {
+        int position = entriesOffset + entry * ENTRY_BYTES;
+        byte[] key = new byte[buffer.getInt(position + 4)];
+        buffer.get(keysOffset + buffer.getInt(position), key);
+        return key;
+    }
+
+    public CompressedPostingList postings(int entry) {
+        int position = entriesOffset + entry * ENTRY_BYTES;
+        return CompressedPostingList.wrap(buffer.slice(buffer.getInt(position + 8), buffer.getInt(position + 12)));
+    }
+
+    public long postingCount() {
+        return postingCount;
+    }
+
+    public long pageIdSum() {
+        return pageIdSum;
+    }
+
+    public double rankSum() {
+        return rankSum;
+    }
+
+    public long sizeBytes() {
+        return buffer != null ? buffer.capacity() : 0;
+    }
+
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    public boolean isDirect() {
+        return buffer != null && buffer.isDirect();
+    }
+
+    private int compareKey(int entry, byte[] key) {
+        int position = entriesOffset + entry * ENTRY_BYTES;
+        int offset = keysOffset + buffer.getInt(position);
+        int length = buffer.getInt(position + 4);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(offset + i) & 0xff) - (key[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    public static int compareKeys(byte[] left, byte[] right) {
+        return Arrays.compareUnsigned(left, right);
+    }
+
+    /**
+     * Последовательная запись сегмента. Леммы добавляются по возрастанию {@link #compareKeys}.
+     */
+    public static final class Writer {
+        private final OutputStream out;
+        private final ByteArrayOutputStream keys = new ByteArrayOutputStream();
+        private int[] entries = new int[ENTRY_BYTES];
+        private int lemmaCount;
+        private long position;
+        private long postingCount;
+        private long pageIdSum;
+        private double rankSum;
+
+        public Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        public void add(byte[] key, PostingList postings) throws IOException {
+            byte[] encoded = CompressedPostingList.encode(postings);
+            if (lemmaCount * 4 + 4 > entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[lemmaCount * 4] = keys.size();
+            entries[lemmaCount * 4 + 1] = key.length;
+            entries[lemmaCount * 4 + 2] = checkedPosition();
+            entries[lemmaCount * 4 + 3] = encoded.length;
+            lemmaCount++;
+            keys.write(key);
+            out.write(encoded);
+            position += encoded.length;
+
+            postingCount += postings.size();
+            for (int i = 0; i < postings.size(); i++) {
+                pageIdSum += postings.pageId(i);
+                rankSum += postings.rank(i);
+            }
+        }
+
+        public void finish() throws IOException {
+            int keysOffset = checkedPosition();
+            keys.writeTo(out);
+            position += keys.size();
+            int entriesOffset = checkedPosition();
+
+            ByteBuffer tail = ByteBuffer.allocate(lemmaCount * ENTRY_BYTES + FOOTER_BYTES);
+            for (int i = 0; i < lemmaCount * 4; i++) {
+                tail.putInt(entries[i]);
+            }
+            tail.putInt(MAGIC).putInt(VERSION).putInt(lemmaCount)
+                    .putLong(postingCount).putLong(pageIdSum).putDouble(rankSum)
+                    .putInt(keysOffset).putInt(entriesOffset);
+            out.write(tail.array());
+            position += tail.capacity();
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Сегмент больше 2 ГБ");
+            }
+            out.flush();
+        }
+
+        private int checkedPosition() throws IOException {
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Сегмент больше 2 ГБ");
+            }
+            return (int) position;
+        }
+    }
+}
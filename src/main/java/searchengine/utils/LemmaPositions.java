@@ -0,0 +1,166 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Позиции леммы на странице: порядковый номер слова в тексте (считая все слова) и смещение начала слова
+ * в сохранённом тексте страницы. Число позиций — rank леммы на странице. Не потокобезопасен.
+ * <p>
+ * В базе хранится в колонке index.positions: число позиций, затем пары (номер слова, смещение)
+ * разностями от предыдущей пары в varint.
+ */
+public class LemmaPositions {
+    private int[] ordinals;
+    private int[] offsets;
+    private int size;
+
+    public LemmaPositions() {
+        this(2);
+    }
+
+    public LemmaPositions(int capacity) {
+        ordinals = new int[Math.max(1, capacity)];
+        offsets = new int[ordinals.length];
+    }
+
+    /**
+     * Добавляет позицию; номера слов должны возрастать.
+     */
+    public void add(int ordinal, int offset) {
+        if (size == ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        ordinals[size] = ordinal;
+        offsets[size] = offset;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int ordinal(int i) {
+        return ordinals[i];
+    }
+
+    public int offset(int i) {
+        return offsets[i];
+    }
+
+    public boolean containsOrdinal(int ordinal) {
+        return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+    }
+
+    /**
+     * Объединение позиций двух словоформ, приводящихся к одной лемме (например, с "ё" и с "е").
+     */
+    public static LemmaPositions merge(LemmaPositions left, LemmaPositions right) {
+        LemmaPositions merged = new LemmaPositions(left.size + right.size);
+        int i = 0;
+        int j = 0;
+        while (i < left.size || j < right.size) {
+            if (j == right.size || i < left.size && left.ordinals[i] <= right.ordinals[j]) {
+                merged.add(left.ordinals[i], left.offsets[i]);
+                i++;
+            } else {
+                merged.add(right.ordinals[j], right.offsets[j]);
+                j++;
+            }
+        }
+        return merged;
+    }
+
+    public byte[] encode() {
+        byte[] buffer = new byte[5 + size * 10];
+        int position = writeVarInt(buffer, 0, size);
+        int previousOrdinal = 0;
+        int previousOffset = 0;
+        for (int i = 0; i < size; i++) {
+            position = writeVarInt(buffer, position, ordinals[i] - previousOrdinal);
+            position = writeVarInt(buffer, position, offsets[i] - previousOffset);
+            previousOrdinal = ordinals[i];
+            previousOffset = offsets[i];
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public static LemmaPositions decode(byte[] encoded) {
+        int[] position = {0};
+        int size = readVarInt(encoded, position);
+        LemmaPositions positions = new LemmaPositions(size);
+        int ordinal = 0;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            ordinal += readVarInt(encoded, position);
+            offset += readVarInt(encoded, position);
+            positions.add(ordinal, offset);
+        }
+        return positions;
+    }
+
+    /**
+     * Есть ли фраза: лемма terms[k] стоит через gaps[k] слов после terms[0].
+     */
+    public static boolean containsPhrase(List<LemmaPositions> terms, int[] gaps) {
+        LemmaPositions first = terms.get(0);
+        candidates:
+        for (int i = 0; i < first.size; i++) {
+            for (int k = 1; k < terms.size(); k++) {
+                if (!terms.get(k).containsOrdinal(first.ordinals[i] + gaps[k])) {
+                    continue candidates;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Наименьшее расстояние в словах между первой и последней леммой фрагмента, содержащего все леммы.
+     */
+    public static int minimalSpan(List<LemmaPositions> terms) {
+        int[] cursors = new int[terms.size()];
+        int best = Integer.MAX_VALUE;
+        while (true) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int minTerm = -1;
+            for (int k = 0; k < terms.size(); k++) {
+                if (cursors[k] >= terms.get(k).size) {
+                    return best;
+                }
+                int ordinal = terms.get(k).ordinals[cursors[k]];
+                if (ordinal < min) {
+                    min = ordinal;
+                    minTerm = k;
+                }
+                max = Math.max(max, ordinal);
+            }
+            best = Math.min(best, max - min);
+            cursors[minTerm]++;
+        }
+    }
+
+    private static int writeVarInt(byte[] buffer, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarInt(byte[] buffer, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position[0]++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
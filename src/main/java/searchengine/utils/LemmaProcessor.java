@@ -1,64 +1,301 @@
 package searchengine.utils;
 
+import jakarta.annotation.PreDestroy;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import java.util.List;
+import searchengine.config.SitesList;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Component
 public class LemmaProcessor {
     private static final Logger logger = LoggerFactory.getLogger(LemmaProcessor.class);
     private final LuceneMorphology russianMorphology;
     private final LuceneMorphology englishMorphology;
-    private static final Set<String> PARTICLES = Set.of("ПРЕДЛ", "СОЮЗ", "МЕЖД", "ЧАСТ");
+    private static final String[] PARTICLES = {"ПРЕДЛ", "СОЮЗ", "МЕЖД", "ЧАСТ"};
+    private static final int CYRILLIC = 1;
+    private static final int LATIN = 2;
+    private static final int OTHER = 4;
+    private static final int DEFAULT_CACHE_SIZE = 100_000;
+    // тексты длиннее делятся на части по границам слов и лемматизируются параллельно
+    private static final int CHUNK_CHARS = 64 * 1024;
+    private final WordFormCache wordFormCache;
+    // одна ссылка на загрузчик вместо новой лямбды на каждое слово
+    private final Function<String, String> loader = this::lemmatizeUncached;
+    private final int poolSize;
+    // создаётся при первой пакетной лемматизации: экземплярам, которые её не используют, потоки не нужны
+    private ExecutorService pool;
+    private boolean shutdown = false;
+
+    private record Chunk(int text, int from, int to) {
+    }
+
+    private record ChunkLemmas(Map<String, LemmaPositions> lemmas, int words) {
+    }
 
     public LemmaProcessor() throws Exception {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    @Autowired
+    public LemmaProcessor(SitesList sitesList) throws Exception {
+        this(sitesList.getLemmaCacheSize(), sitesList.getLemmatizerThreads());
+    }
+
+    public LemmaProcessor(int cacheSize) throws Exception {
+        this(cacheSize, 0);
+    }
+
+    public LemmaProcessor(int cacheSize, int threads) throws Exception {
         this.russianMorphology = new RussianLuceneMorphology();
         this.englishMorphology = new EnglishLuceneMorphology();
+        this.wordFormCache = new WordFormCache(cacheSize);
+        this.poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        logger.info("Словари морфологии загружены, размер кэша словоформ: {}, потоков лемматизации: {}", cacheSize, poolSize);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private synchronized ExecutorService pool() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Пул лемматизации остановлен");
+        }
+        if (pool == null) {
+            AtomicInteger counter = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(poolSize, runnable -> {
+                Thread thread = new Thread(runnable, "lemmatizer-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Получатель лемм текста: лемма, номер слова в тексте (служебные и нераспознанные слова тоже считаются)
+     * и смещение начала слова.
+     */
+    @FunctionalInterface
+    public interface LemmaSink {
+        void accept(String lemma, int ordinal, int offset);
     }
 
     public List<String> extractLemmas(String text) {
-        List<String> words = splitIntoWords(text.toLowerCase());
-        return words.stream()
-                .map(this::lemmatizeWord)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        List<String> lemmas = new ArrayList<>();
+        forEachLemma(text, (lemma, ordinal, offset) -> lemmas.add(lemma));
+        return lemmas;
     }
 
-    private String lemmatizeWord(String word) {
-        try {
-            if (word.matches(".*[а-яА-Я]+.*")) {
-                return processLemmas(russianMorphology, word);
-            } else if (word.matches(".*[a-zA-Z]+.*")) {
-                return processLemmas(englishMorphology, word);
+    /**
+     * Леммы текста с позициями по ключу леммы; число позиций — сколько раз лемма встретилась.
+     * Длинный текст лемматизируется частями параллельно.
+     */
+    public Map<String, LemmaPositions> collectLemmaPositions(String text) {
+        if (text.length() > CHUNK_CHARS) {
+            return collectLemmaPositions(List.of(text)).get(0);
+        }
+        return lemmatizeChunk(text, 0, text.length()).lemmas();
+    }
+
+    /**
+     * Пакетная лемматизация: тексты (длинные — частями по границам слов) обрабатываются параллельно
+     * в пуле размером с число ядер, отдельном от потоков загрузки страниц. Результат для каждого текста
+     * тот же, что у {@link #collectLemmaPositions(String)}, в порядке texts.
+     */
+    public List<Map<String, LemmaPositions>> collectLemmaPositions(List<String> texts) {
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            int from = 0;
+            do {
+                int to = chunkEnd(text, from);
+                chunks.add(new Chunk(i, from, to));
+                from = to;
+            } while (from < text.length());
+        }
+
+        List<ChunkLemmas> results = new ArrayList<>(chunks.size());
+        if (chunks.size() == 1) {
+            Chunk chunk = chunks.get(0);
+            results.add(lemmatizeChunk(texts.get(chunk.text()), chunk.from(), chunk.to()));
+        } else {
+            List<Callable<ChunkLemmas>> tasks = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                tasks.add(() -> lemmatizeChunk(texts.get(chunk.text()), chunk.from(), chunk.to()));
             }
+            try {
+                for (Future<ChunkLemmas> future : pool().invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Лемматизация прервана", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Ошибка лемматизации", e.getCause());
+            }
+        }
+
+        // части одного текста идут подряд: номера слов сдвигаются на число слов предыдущих частей
+        List<Map<String, LemmaPositions>> merged = new ArrayList<>(texts.size());
+        int words = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkLemmas result = results.get(i);
+            if (chunks.get(i).from() == 0) {
+                merged.add(result.lemmas());
+                words = result.words();
+                continue;
+            }
+            Map<String, LemmaPositions> lemmas = merged.get(merged.size() - 1);
+            int base = words;
+            result.lemmas().forEach((lemma, positions) -> {
+                LemmaPositions target = lemmas.computeIfAbsent(lemma, key -> new LemmaPositions(positions.size()));
+                for (int j = 0; j < positions.size(); j++) {
+                    target.add(positions.ordinal(j) + base, positions.offset(j));
+                }
+            });
+            words += result.words();
+        }
+        return merged;
+    }
+
+    /**
+     * Разбивает текст на слова (непрерывные последовательности букв) за один проход по кодовым точкам
+     * без регулярных выражений и промежуточных списков и передаёт леммы слов в sink.
+     */
+    public void forEachLemma(String text, LemmaSink sink) {
+        forEachLemma(text, 0, text.length(), sink);
+    }
+
+    private ChunkLemmas lemmatizeChunk(String text, int from, int to) {
+        Map<String, LemmaPositions> lemmas = new HashMap<>();
+        int words = forEachLemma(text, from, to, (lemma, ordinal, offset) -> {
+            LemmaPositions positions = lemmas.get(lemma);
+            if (positions == null) {
+                positions = new LemmaPositions();
+                lemmas.put(lemma, positions);
+            }
+            positions.add(ordinal, offset);
+        });
+        return new ChunkLemmas(lemmas, words);
+    }
+
+    // конец части: не раньше from + CHUNK_CHARS и не посреди слова
+    private static int chunkEnd(String text, int from) {
+        if (text.length() - from <= CHUNK_CHARS) {
+            return text.length();
+        }
+        int end = from + CHUNK_CHARS;
+        while (end < text.length()
+                && (Character.isLowSurrogate(text.charAt(end)) || Character.isLetter(text.codePointAt(end)))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Слова фрагмента [from, to); номера слов считаются от начала фрагмента, смещения — от начала текста.
+     * Возвращает число слов.
+     */
+    private int forEachLemma(String text, int from, int to, LemmaSink sink) {
+        StringBuilder word = new StringBuilder(32);
+        int ordinal = 0;
+        int position = from;
+        while (position < to) {
+            int codePoint = text.codePointAt(position);
+            if (!Character.isLetter(codePoint)) {
+                position += Character.charCount(codePoint);
+                continue;
+            }
+            int start = position;
+            word.setLength(0);
+            do {
+                word.appendCodePoint(Character.toLowerCase(codePoint));
+                position += Character.charCount(codePoint);
+            } while (position < to && Character.isLetter(codePoint = text.codePointAt(position)));
+
+            String lemma = wordFormCache.get(word.toString(), loader);
+            if (lemma != null) {
+                sink.accept(lemma, ordinal, start);
+            }
+            ordinal++;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Лемма одного слова в нижнем регистре; null для служебных частей речи и нераспознанных слов.
+     */
+    public String lemmatize(String word) {
+        return wordFormCache.get(word, loader);
+    }
+
+    public WordFormCache getWordFormCache() {
+        return wordFormCache;
+    }
+
+    private String lemmatizeUncached(String word) {
+        try {
+            return switch (scriptOf(word)) {
+                case CYRILLIC -> processLemmas(russianMorphology, word);
+                case LATIN -> processLemmas(englishMorphology, word);
+                default -> null;
+            };
         } catch (Exception e) {
-            System.out.println("Ошибка обработки слова: " + word);
+            logger.warn("Ошибка обработки слова '{}': {}", word, e.getMessage());
         }
         return null;
     }
 
-    private String processLemmas(LuceneMorphology morphology, String word) {
-        List<String> normalForms = morphology.getNormalForms(word);
-        List<String> wordInfo = morphology.getMorphInfo(word);
+    // слова из смеси алфавитов или с буквами других алфавитов словарями не разбираются
+    private static int scriptOf(String word) {
+        int script = 0;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c >= 'а' && c <= 'я' || c == 'ё') {
+                script |= CYRILLIC;
+            } else if (c >= 'a' && c <= 'z') {
+                script |= LATIN;
+            } else {
+                return OTHER;
+            }
+        }
+        return script;
+    }
 
-        for (int i = 0; i < wordInfo.size(); i++) {
-            String info = wordInfo.get(i);
-            if (PARTICLES.stream().noneMatch(info::contains)) {
-                return normalForms.get(i);
+    /**
+     * Первая нормальная форма, не являющаяся служебной частью речи. Строка морфологической информации
+     * имеет вид "форма|код часть_речи ...", поэтому второй запрос getNormalForms не нужен.
+     */
+    private String processLemmas(LuceneMorphology morphology, String word) {
+        for (String info : morphology.getMorphInfo(word)) {
+            if (!isParticle(info)) {
+                int separator = info.indexOf('|');
+                String normalForm = separator >= 0 ? info.substring(0, separator) : info;
+                return normalForm.isEmpty() ? null : normalForm;
             }
         }
         return null;
     }
 
-    private List<String> splitIntoWords(String text) {
-        return Arrays.stream(text.split("\\P{L}+"))
-                .filter(word -> !word.isBlank())
-                .collect(Collectors.toList());
+    private static boolean isParticle(String info) {
+        for (String particle : PARTICLES) {
+            if (info.contains(particle)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,86 @@
+package searchengine.utils;
+
+/**
+ * Множество примитивных long с открытой адресацией: 8 байт на элемент вместо объекта Long и узла хеш-таблицы.
+ * Не потокобезопасно.
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0L;
+    private static final long ZERO_SUBSTITUTE = 0x9e3779b97f4a7c15L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] table;
+    private int size;
+    private int resizeThreshold;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public boolean add(long value) {
+        long key = value == EMPTY ? ZERO_SUBSTITUTE : value;
+        int mask = table.length - 1;
+        int index = slot(key, mask);
+        while (table[index] != EMPTY) {
+            if (table[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = key;
+        if (++size > resizeThreshold) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        long key = value == EMPTY ? ZERO_SUBSTITUTE : value;
+        int mask = table.length - 1;
+        int index = slot(key, mask);
+        while (table[index] != EMPTY) {
+            if (table[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) Fingerprints.mix(key) & mask;
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int index = slot(key, mask);
+                while (table[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = key;
+            }
+        }
+    }
+}
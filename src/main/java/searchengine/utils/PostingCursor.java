@@ -0,0 +1,61 @@
+package searchengine.utils;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Последовательный проход по списку вхождений в порядке возрастания id страниц.
+ */
+public interface PostingCursor {
+    int NO_MORE = Integer.MAX_VALUE;
+
+    /**
+     * Переходит к первому вхождению с id не меньше target и возвращает этот id или {@link #NO_MORE}.
+     * target не должен убывать между вызовами.
+     */
+    int advance(int target);
+
+    float rank();
+
+    /**
+     * Объединение двух курсоров; при совпадении id берётся rank из overrides.
+     */
+    static PostingCursor union(PostingCursor base, PostingCursor overrides) {
+        return new PostingCursor() {
+            private boolean fromOverrides;
+
+            @Override
+            public int advance(int target) {
+                int baseId = base.advance(target);
+                int overrideId = overrides.advance(target);
+                fromOverrides = overrideId <= baseId;
+                return Math.min(baseId, overrideId);
+            }
+
+            @Override
+            public float rank() {
+                return fromOverrides ? overrides.rank() : base.rank();
+            }
+        };
+    }
+
+    /**
+     * Курсор, пропускающий вхождения страниц, для которых skipped возвращает true.
+     */
+    static PostingCursor skipping(PostingCursor cursor, IntPredicate skipped) {
+        return new PostingCursor() {
+            @Override
+            public int advance(int target) {
+                int pageId = cursor.advance(target);
+                while (pageId != NO_MORE && skipped.test(pageId)) {
+                    pageId = cursor.advance(pageId + 1);
+                }
+                return pageId;
+            }
+
+            @Override
+            public float rank() {
+                return cursor.rank();
+            }
+        };
+    }
+}
@@ -0,0 +1,163 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Список вхождений леммы: id страниц по возрастанию и rank для каждой страницы в параллельных массивах.
+ * Не потокобезопасен.
+ */
+public class PostingList {
+    private int[] pageIds;
+    private float[] ranks;
+    private int size;
+    private boolean sorted = true;
+
+    public PostingList() {
+        this(4);
+    }
+
+    public PostingList(int capacity) {
+        pageIds = new int[Math.max(1, capacity)];
+        ranks = new float[pageIds.length];
+    }
+
+    /**
+     * Добавляет или обновляет вхождение, сохраняя порядок. Новые страницы обычно имеют больший id, поэтому
+     * чаще всего это добавление в конец.
+     */
+    public void add(int pageId, float rank) {
+        seal();
+        if (size == 0 || pageId > pageIds[size - 1]) {
+            append(pageId, rank);
+            return;
+        }
+        int position = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (position >= 0) {
+            ranks[position] = rank;
+            return;
+        }
+        int insertAt = -position - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(pageIds, insertAt, pageIds, insertAt + 1, size - insertAt);
+        System.arraycopy(ranks, insertAt, ranks, insertAt + 1, size - insertAt);
+        pageIds[insertAt] = pageId;
+        ranks[insertAt] = rank;
+        size++;
+    }
+
+    /**
+     * Добавление в конец без проверки порядка — для массовой загрузки; перед чтением нужен {@link #seal()}.
+     */
+    public void append(int pageId, float rank) {
+        ensureCapacity(size + 1);
+        if (size > 0 && pageId <= pageIds[size - 1]) {
+            sorted = false;
+        }
+        pageIds[size] = pageId;
+        ranks[size] = rank;
+        size++;
+    }
+
+    public void seal() {
+        if (sorted) {
+            return;
+        }
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = ((long) pageIds[i] << 32) | (Float.floatToRawIntBits(ranks[i]) & 0xffffffffL);
+        }
+        Arrays.sort(packed);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            int pageId = (int) (packed[i] >>> 32);
+            if (unique > 0 && pageIds[unique - 1] == pageId) {
+                unique--;
+            }
+            pageIds[unique] = pageId;
+            ranks[unique] = Float.intBitsToFloat((int) packed[i]);
+            unique++;
+        }
+        size = unique;
+        sorted = true;
+    }
+
+    public int removeAll(Set<Integer> removedPageIds) {
+        seal();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removedPageIds.contains(pageIds[i])) {
+                pageIds[kept] = pageIds[i];
+                ranks[kept] = ranks[i];
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * Позиция первого вхождения с id не меньше pageId, начиная с from (экспоненциальный, затем двоичный поиск).
+     * Возвращает size(), если такого нет.
+     */
+    public int advance(int pageId, int from) {
+        if (from >= size || pageIds[from] >= pageId) {
+            return from;
+        }
+        int step = 1;
+        int low = from;
+        int high = from + 1;
+        while (high < size && pageIds[high] < pageId) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        int position = Arrays.binarySearch(pageIds, low + 1, Math.min(high + 1, size), pageId);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Курсор по списку; список должен быть упорядочен ({@link #seal()}) и не меняться во время прохода.
+     */
+    public PostingCursor cursor() {
+        return new PostingCursor() {
+            private int position = 0;
+
+            @Override
+            public int advance(int target) {
+                position = PostingList.this.advance(target, position);
+                return position < size ? pageIds[position] : NO_MORE;
+            }
+
+            @Override
+            public float rank() {
+                return ranks[position];
+            }
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pageId(int position) {
+        return pageIds[position];
+    }
+
+    public float rank(int position) {
+        return ranks[position];
+    }
+
+    public long memoryBytes() {
+        return (long) pageIds.length * (Integer.BYTES + Float.BYTES);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > pageIds.length) {
+            int newCapacity = Math.max(capacity, pageIds.length + (pageIds.length >> 1) + 1);
+            pageIds = Arrays.copyOf(pageIds, newCapacity);
+            ranks = Arrays.copyOf(ranks, newCapacity);
+        }
+    }
+}
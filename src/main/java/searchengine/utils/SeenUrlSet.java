@@ -0,0 +1,110 @@
+package searchengine.utils;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Множество уже встреченных URL обхода. Ключи должны быть нормализованы {@link UrlNormalizer}.
+ * <ul>
+ *     <li>EXACT — только конкурентное множество строк;</li>
+ *     <li>BLOOM_EXACT — фильтр Блума перед множеством: отсекает новые URL без обращения к множеству
+ *     и позволяет замерить реальную долю ложных срабатываний фильтра;</li>
+ *     <li>BLOOM — только фильтр Блума: память ограничена, но часть новых URL будет ошибочно пропущена.</li>
+ * </ul>
+ */
+public class SeenUrlSet {
+
+    public enum Mode {
+        EXACT,
+        BLOOM_EXACT,
+        BLOOM
+    }
+
+    private final Mode mode;
+    private final Set<String> exact;
+    private final BloomFilter bloom;
+
+    private final LongAdder size = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public SeenUrlSet() {
+        this(Mode.EXACT, 0, 0);
+    }
+
+    public SeenUrlSet(Mode mode, long expectedUrls, double falsePositiveRate) {
+        this.mode = mode;
+        this.exact = mode == Mode.BLOOM ? null : ConcurrentHashMap.newKeySet();
+        this.bloom = mode == Mode.EXACT ? null : new BloomFilter(expectedUrls, falsePositiveRate);
+    }
+
+    /**
+     * Отмечает URL как встреченный. Возвращает true, если он встретился впервые.
+     */
+    public boolean add(String url) {
+        lookups.increment();
+        boolean added = switch (mode) {
+            case EXACT -> exact.add(url);
+            case BLOOM -> bloom.put(Fingerprints.of(url));
+            case BLOOM_EXACT -> addBloomExact(url);
+        };
+        if (added) {
+            size.increment();
+        } else {
+            hits.increment();
+        }
+        return added;
+    }
+
+    public void addAll(Collection<String> urls) {
+        for (String url : urls) {
+            add(url);
+        }
+    }
+
+    public boolean contains(String url) {
+        return switch (mode) {
+            case EXACT -> exact.contains(url);
+            case BLOOM -> bloom.mightContain(Fingerprints.of(url));
+            case BLOOM_EXACT -> bloom.mightContain(Fingerprints.of(url)) && exact.contains(url);
+        };
+    }
+
+    public long size() {
+        return size.sum();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("seenUrlMode", mode.name());
+        metrics.put("seenUrls", size.sum());
+        metrics.put("seenUrlLookups", lookups.sum());
+        metrics.put("seenUrlHits", hits.sum());
+        if (bloom != null) {
+            metrics.put("bloomBits", bloom.getBitCount());
+            metrics.put("bloomExpectedFalsePositiveRate", bloom.expectedFalsePositiveRate(size.sum()));
+        }
+        if (mode == Mode.BLOOM_EXACT) {
+            metrics.put("bloomFalsePositives", falsePositives.sum());
+        }
+        return metrics;
+    }
+
+    private boolean addBloomExact(String url) {
+        long fingerprint = Fingerprints.of(url);
+        if (!bloom.mightContain(fingerprint)) {
+            bloom.put(fingerprint);
+            return exact.add(url);
+        }
+        if (exact.add(url)) {
+            falsePositives.increment();
+            return true;
+        }
+        return false;
+    }
+}
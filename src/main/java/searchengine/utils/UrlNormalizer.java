@@ -0,0 +1,80 @@
+package searchengine.utils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Приведение URL к каноническому виду, чтобы одна и та же страница не попадала в обход дважды:
+ * схема и хост в нижнем регистре, без порта по умолчанию и без фрагмента, параметры запроса отсортированы.
+ * Завершающий слэш пути не удаляется: путь URL сохраняется в page.path, и уже сохранённые "/foo/"
+ * должны совпадать с новыми, а сайт может отдавать по "/foo" и "/foo/" разные страницы.
+ */
+public final class UrlNormalizer {
+
+    private UrlNormalizer() {
+    }
+
+    public static String normalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            String scheme = uri.getScheme();
+            String host = uri.getHost();
+            if (scheme == null || host == null) {
+                return null;
+            }
+            scheme = scheme.toLowerCase(Locale.ROOT);
+            host = host.toLowerCase(Locale.ROOT);
+
+            int port = uri.getPort();
+            if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))) {
+                port = -1;
+            }
+
+            String path = uri.getRawPath();
+            if (path == null || path.isEmpty()) {
+                path = "/";
+            }
+
+            StringBuilder normalized = new StringBuilder(trimmed.length());
+            normalized.append(scheme).append("://").append(host);
+            if (port != -1) {
+                normalized.append(':').append(port);
+            }
+            normalized.append(path);
+            String query = sortQuery(uri.getRawQuery());
+            if (query != null) {
+                normalized.append('?').append(query);
+            }
+            return normalized.toString();
+        } catch (URISyntaxException e) {
+            // Jsoup может вернуть URL с неэкранированными символами — оставляем его как есть, без фрагмента
+            int fragment = trimmed.indexOf('#');
+            return fragment >= 0 ? trimmed.substring(0, fragment) : trimmed;
+        }
+    }
+
+    private static String sortQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        String[] params = query.split("&");
+        Arrays.sort(params);
+        StringBuilder sorted = new StringBuilder(query.length());
+        for (String param : params) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            if (sorted.length() > 0) {
+                sorted.append('&');
+            }
+            sorted.append(param);
+        }
+        return sorted.length() > 0 ? sorted.toString() : null;
+    }
+}
@@ -0,0 +1,109 @@
+package searchengine.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Ограниченный потокобезопасный кэш "словоформа -> лемма".
+ * Разбит на сегменты с LRU-вытеснением, чтобы потоки индексации не конкурировали за одну блокировку.
+ */
+public class WordFormCache {
+    private static final int SEGMENTS = 16;
+    private static final String NO_LEMMA = "";
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public WordFormCache(int maxSize) {
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Возвращает лемму из кэша либо вычисляет её через loader.
+     * null (служебная часть речи, нераспознанное слово) тоже кэшируется.
+     */
+    public String get(String word, Function<String, String> loader) {
+        Segment segment = segmentFor(word);
+        String cached;
+        synchronized (segment) {
+            cached = segment.get(word);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached.isEmpty() ? null : cached;
+        }
+
+        misses.increment();
+        String lemma = loader.apply(word);
+        synchronized (segment) {
+            segment.put(word, lemma != null ? lemma : NO_LEMMA);
+        }
+        return lemma;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long total = getHits() + getMisses();
+        return total == 0 ? 0.0 : (double) getHits() / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment segmentFor(String word) {
+        int hash = word.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private class Segment extends LinkedHashMap<String, String> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import searchengine.config.SitesList;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.utils.LemmaPositions;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LemmaIndexWriterTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final int SITE_ID = 1;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SearchIndex searchIndex;
+    private LemmaIndexWriter writer;
+    private final Site site = new Site();
+
+    @BeforeEach
+    void createDatabase() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:lemma-index-writer-" + DATABASES.incrementAndGet()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE page (id INT PRIMARY KEY, site_id INT NOT NULL, token_count INT, " +
+                "etag VARCHAR(255), last_modified VARCHAR(64))");
+        jdbcTemplate.execute("CREATE TABLE lemma (id INT AUTO_INCREMENT PRIMARY KEY, site_id INT NOT NULL, " +
+                "lemma VARCHAR(500) NOT NULL, frequency INT NOT NULL)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX idx_lemma_site ON lemma (lemma, site_id)");
+        jdbcTemplate.execute("CREATE TABLE `index` (id INT AUTO_INCREMENT PRIMARY KEY, page_id INT NOT NULL, " +
+                "lemma_id INT NOT NULL, `rank` FLOAT NOT NULL, positions BLOB)");
+
+        SitesList sitesList = new SitesList();
+        sitesList.getSearch().setSegmentDir("");
+        searchIndex = new SearchIndex(jdbcTemplate, sitesList);
+        writer = new LemmaIndexWriter(jdbcTemplate, searchIndex);
+        site.setId(SITE_ID);
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        searchIndex.shutdown();
+        dataSource.destroy();
+    }
+
+    @Test
+    void writeAllCountsEachLemmaOncePerPage() {
+        int saved = writer.writeAll(List.of(
+                pageLemmas(1, Map.of("альфа", positions(0, 4), "бета", positions(2))),
+                pageLemmas(2, Map.of("альфа", positions(1)))));
+
+        assertEquals(3, saved);
+        assertEquals(2, frequency("альфа"));
+        assertEquals(1, frequency("бета"));
+        assertEquals(3, tokenCount(1));
+        assertEquals(1, tokenCount(2));
+        assertEquals(2f, jdbcTemplate.queryForObject("SELECT i.`rank` FROM `index` i JOIN lemma l ON l.id = i.lemma_id " +
+                "WHERE i.page_id = 1 AND l.lemma = 'альфа'", Float.class));
+    }
+
+    @Test
+    void laterBatchesIncreaseExistingFrequencies() {
+        writer.writeAll(List.of(pageLemmas(1, Map.of("альфа", positions(0)))));
+        writer.writeAll(List.of(
+                pageLemmas(2, Map.of("альфа", positions(0), "бета", positions(1))),
+                pageLemmas(3, Map.of("альфа", positions(3)))));
+
+        assertEquals(3, frequency("альфа"));
+        assertEquals(1, frequency("бета"));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM lemma", Integer.class));
+    }
+
+    @Test
+    void pagesWithoutLemmasAreSkipped() {
+        int saved = writer.writeAll(List.of(pageLemmas(1, Map.of())));
+
+        assertEquals(0, saved);
+        assertNull(tokenCount(1));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM lemma", Integer.class));
+    }
+
+    @Test
+    void writtenPagesReachLoadedSearchIndex() {
+        searchIndex.ensureLoaded(SITE_ID);
+
+        writer.writeAll(List.of(
+                pageLemmas(1, Map.of("альфа", positions(0))),
+                pageLemmas(2, Map.of("альфа", positions(0), "бета", positions(1)))));
+
+        SearchIndex.TopPages top = new SearchIndex.TopPages(10);
+        searchIndex.search(SITE_ID, List.of("альфа"), top);
+        assertEquals(2, top.count());
+        top = new SearchIndex.TopPages(10);
+        searchIndex.search(SITE_ID, List.of("альфа", "бета"), top);
+        assertEquals(List.of(2), top.sorted().stream().map(SearchIndex.ScoredPage::pageId).toList());
+    }
+
+    @Test
+    void replaceAllDecrementsOldLemmasAndDeletesUnusedOnes() {
+        writer.writeAll(List.of(
+                pageLemmas(1, Map.of("альфа", positions(0), "бета", positions(1))),
+                pageLemmas(2, Map.of("альфа", positions(0)))));
+
+        int saved = writer.replaceAll(List.of(replacement(1, Map.of("альфа", positions(2, 5), "гамма", positions(0)))));
+
+        assertEquals(2, saved);
+        assertEquals(2, frequency("альфа"));
+        assertEquals(1, frequency("гамма"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM lemma WHERE lemma = 'бета'", Integer.class));
+        assertEquals(3, tokenCount(1));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `index` WHERE page_id = 1", Integer.class));
+    }
+
+    @Test
+    void replaceAllWithoutLemmasClearsTokenCount() {
+        writer.writeAll(List.of(
+                pageLemmas(1, Map.of("альфа", positions(0))),
+                pageLemmas(2, Map.of("альфа", positions(0), "бета", positions(1)))));
+
+        writer.replaceAll(List.of(replacement(2, Map.of())));
+
+        assertEquals(1, frequency("альфа"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM lemma WHERE lemma = 'бета'", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `index` WHERE page_id = 2", Integer.class));
+        assertNull(tokenCount(2));
+        assertEquals(1, tokenCount(1));
+    }
+
+    @Test
+    void updateValidatorsKeepsIndexes() {
+        writer.writeAll(List.of(pageLemmas(1, Map.of("альфа", positions(0)))));
+        Page page = new Page();
+        page.setId(1);
+        page.setEtag("\"v2\"");
+        page.setLastModified("Fri, 16 Oct 2026 10:00:00 GMT");
+
+        writer.updateValidators(List.of(page));
+
+        assertEquals("\"v2\"", jdbcTemplate.queryForObject("SELECT etag FROM page WHERE id = 1", String.class));
+        assertEquals("Fri, 16 Oct 2026 10:00:00 GMT",
+                jdbcTemplate.queryForObject("SELECT last_modified FROM page WHERE id = 1", String.class));
+        assertEquals(1, frequency("альфа"));
+        assertEquals(1, tokenCount(1));
+    }
+
+    private LemmaIndexWriter.PageLemmas pageLemmas(int pageId, Map<String, LemmaPositions> lemmas) {
+        jdbcTemplate.update("INSERT INTO page (id, site_id) VALUES (?, ?)", pageId, SITE_ID);
+        Page page = new Page();
+        page.setId(pageId);
+        page.setSite(site);
+        return new LemmaIndexWriter.PageLemmas(page, lemmas);
+    }
+
+    private LemmaIndexWriter.PageLemmas replacement(int pageId, Map<String, LemmaPositions> lemmas) {
+        Page page = new Page();
+        page.setId(pageId);
+        page.setSite(site);
+        return new LemmaIndexWriter.PageLemmas(page, lemmas);
+    }
+
+    private static LemmaPositions positions(int... ordinals) {
+        LemmaPositions positions = new LemmaPositions();
+        for (int ordinal : ordinals) {
+            positions.add(ordinal, ordinal * 6);
+        }
+        return positions;
+    }
+
+    private int frequency(String lemma) {
+        return jdbcTemplate.queryForObject("SELECT frequency FROM lemma WHERE site_id = ? AND lemma = ?",
+                Integer.class, SITE_ID, lemma);
+    }
+
+    private Integer tokenCount(int pageId) {
+        return jdbcTemplate.queryForObject("SELECT token_count FROM page WHERE id = ?", Integer.class, pageId);
+    }
+}
@@ -0,0 +1,200 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import searchengine.config.SitesList;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final int SITE_ID = 1;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SearchIndex searchIndex;
+    private final Map<String, Integer> lemmaIds = new HashMap<>();
+
+    @BeforeEach
+    void createDatabase() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:search-index-" + DATABASES.incrementAndGet()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE page (id INT PRIMARY KEY, site_id INT NOT NULL, token_count INT)");
+        jdbcTemplate.execute("CREATE TABLE lemma (id INT PRIMARY KEY, site_id INT NOT NULL, lemma VARCHAR(500) NOT NULL, " +
+                "frequency INT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE `index` (page_id INT NOT NULL, lemma_id INT NOT NULL, `rank` FLOAT NOT NULL)");
+
+        SitesList sitesList = new SitesList();
+        sitesList.getSearch().setSegmentDir("");
+        searchIndex = new SearchIndex(jdbcTemplate, sitesList);
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        searchIndex.shutdown();
+        dataSource.destroy();
+    }
+
+    @Test
+    void addRemoveMergeAndReAddKeepPagesAndPostings() {
+        insertPage(1, Map.of("альфа", 2f, "бета", 1f));
+        insertPage(2, Map.of("альфа", 1f));
+        searchIndex.ensureLoaded(SITE_ID);
+        assertEquals(2L, pageCount());
+        assertEquals(Set.of(1, 2), search("альфа"));
+        assertEquals(Set.of(1), search("бета"));
+
+        insertPage(3, Map.of("бета", 3f));
+        searchIndex.addPages(SITE_ID, Map.of(3, Map.of("бета", 3f)));
+        assertEquals(3L, pageCount());
+        assertEquals(Set.of(1, 3), search("бета"));
+
+        // перезапись страницы: старые вхождения маскируются, новые попадают в хвост
+        searchIndex.removePages(SITE_ID, List.of(1), List.of("альфа", "бета"));
+        searchIndex.addPages(SITE_ID, Map.of(1, Map.of("гамма", 1f)));
+        assertEquals(3L, pageCount());
+        assertEquals(Set.of(2), search("альфа"));
+        assertEquals(Set.of(3), search("бета"));
+        assertEquals(Set.of(1), search("гамма"));
+
+        searchIndex.merge(SITE_ID);
+        assertEquals(3L, pageCount());
+        assertEquals(0L, searchIndex.getMetrics().get("pendingPostings"));
+        assertEquals(Set.of(2), search("альфа"));
+        assertEquals(Set.of(3), search("бета"));
+        assertEquals(Set.of(1), search("гамма"));
+
+        searchIndex.removePages(SITE_ID, List.of(1), List.of("гамма"));
+        searchIndex.addPages(SITE_ID, Map.of(1, Map.of("альфа", 1f)));
+        assertEquals(3L, pageCount());
+        assertEquals(Set.of(1, 2), search("альфа"));
+        assertEquals(Set.of(), search("гамма"));
+    }
+
+    @Test
+    void pageCommittedBeforeLoadIsCountedOnce() {
+        insertPage(1, Map.of("альфа", 1f));
+        insertPage(2, Map.of("альфа", 2f));
+        searchIndex.ensureLoaded(SITE_ID);
+
+        // addPages транзакции, завершившейся до загрузки, приходит после неё
+        searchIndex.addPages(SITE_ID, Map.of(2, Map.of("альфа", 2f)));
+
+        assertEquals(2L, pageCount());
+        SearchIndex.TopPages top = new SearchIndex.TopPages(10);
+        searchIndex.search(SITE_ID, List.of("альфа"), top);
+        assertEquals(2, top.count());
+    }
+
+    @Test
+    void pageCommittedDuringMergeIsCountedOnce() {
+        insertPage(1, Map.of("альфа", 1f));
+        searchIndex.ensureLoaded(SITE_ID);
+
+        // страница уже в базе, а её addPages ждёт окончания слияния
+        insertPage(2, Map.of("альфа", 1f));
+        searchIndex.merge(SITE_ID);
+        searchIndex.addPages(SITE_ID, Map.of(2, Map.of("альфа", 1f)));
+
+        assertEquals(2L, pageCount());
+        assertEquals(Set.of(1, 2), search("альфа"));
+    }
+
+    @Test
+    void maskedPagesDoNotChangeLemmaFrequency() {
+        insertPage(1, Map.of("альфа", 1f));
+        insertPage(2, Map.of("альфа", 1f, "бета", 1f));
+        insertPage(3, Map.of("бета", 1f));
+        searchIndex.ensureLoaded(SITE_ID);
+        double initial = relevance(1, "альфа");
+
+        // та же страница, перезаписанная без изменений, учитывается в частоте леммы один раз
+        searchIndex.removePages(SITE_ID, List.of(1), List.of("альфа"));
+        searchIndex.addPages(SITE_ID, Map.of(1, Map.of("альфа", 1f)));
+        assertEquals(initial, relevance(1, "альфа"), 1e-9);
+
+        // страница без леммы после перезаписи (той же длины) больше не учитывается в её частоте
+        searchIndex.removePages(SITE_ID, List.of(2), List.of("альфа", "бета"));
+        searchIndex.addPages(SITE_ID, Map.of(2, Map.of("бета", 2f)));
+        double rarer = relevance(1, "альфа");
+        assertTrue(rarer > initial, rarer + " <= " + initial);
+
+        searchIndex.merge(SITE_ID);
+        assertEquals(rarer, relevance(1, "альфа"), 1e-9);
+    }
+
+    @Test
+    void pageLeftWithoutLemmasMatchesFreshLoad() {
+        insertPage(1, Map.of("альфа", 1f));
+        insertPage(2, Map.of("альфа", 1f, "бета", 9f));
+        searchIndex.ensureLoaded(SITE_ID);
+
+        // страница теперь отвечает ошибкой: её вхождения и длина удаляются, строка page остаётся
+        searchIndex.removePages(SITE_ID, List.of(2), List.of("альфа", "бета"));
+        jdbcTemplate.update("DELETE FROM `index` WHERE page_id = 2");
+        jdbcTemplate.update("UPDATE page SET token_count = NULL WHERE id = 2");
+
+        SitesList sitesList = new SitesList();
+        sitesList.getSearch().setSegmentDir("");
+        SearchIndex loaded = new SearchIndex(jdbcTemplate, sitesList);
+        try {
+            loaded.ensureLoaded(SITE_ID);
+            assertEquals(loaded.getMetrics().get("pages"), searchIndex.getMetrics().get("pages"));
+            assertEquals(relevance(loaded, 1, "альфа"), relevance(searchIndex, 1, "альфа"), 1e-9);
+            assertEquals(Set.of(), search("бета"));
+        } finally {
+            loaded.shutdown();
+        }
+    }
+
+    private double relevance(int pageId, String lemma) {
+        return relevance(searchIndex, pageId, lemma);
+    }
+
+    private static double relevance(SearchIndex searchIndex, int pageId, String lemma) {
+        SearchIndex.TopPages top = new SearchIndex.TopPages(100);
+        searchIndex.search(SITE_ID, List.of(lemma), top);
+        return top.sorted().stream()
+                .filter(page -> page.pageId() == pageId)
+                .mapToDouble(SearchIndex.ScoredPage::relevance)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private Set<Integer> search(String... lemmas) {
+        SearchIndex.TopPages top = new SearchIndex.TopPages(100);
+        searchIndex.search(SITE_ID, List.of(lemmas), top);
+        Set<Integer> pageIds = new HashSet<>();
+        top.sorted().forEach(page -> pageIds.add(page.pageId()));
+        return pageIds;
+    }
+
+    private long pageCount() {
+        return (Long) searchIndex.getMetrics().get("pages");
+    }
+
+    private void insertPage(int pageId, Map<String, Float> ranks) {
+        float tokens = 0;
+        for (Map.Entry<String, Float> entry : ranks.entrySet()) {
+            Integer lemmaId = lemmaIds.get(entry.getKey());
+            if (lemmaId == null) {
+                lemmaId = lemmaIds.size() + 1;
+                lemmaIds.put(entry.getKey(), lemmaId);
+                jdbcTemplate.update("INSERT INTO lemma (id, site_id, lemma, frequency) VALUES (?, ?, ?, 0)",
+                        lemmaId, SITE_ID, entry.getKey());
+            }
+            jdbcTemplate.update("UPDATE lemma SET frequency = frequency + 1 WHERE id = ?", lemmaId);
+            jdbcTemplate.update("INSERT INTO `index` (page_id, lemma_id, `rank`) VALUES (?, ?, ?)",
+                    pageId, lemmaId, entry.getValue());
+            tokens += entry.getValue();
+        }
+        jdbcTemplate.update("INSERT INTO page (id, site_id, token_count) VALUES (?, ?, ?)", pageId, SITE_ID, (int) tokens);
+    }
+}
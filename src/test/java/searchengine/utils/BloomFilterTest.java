@@ -0,0 +1,65 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void containsEveryInsertedFingerprint() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        SplittableRandom random = new SplittableRandom(1);
+        long[] fingerprints = new long[10_000];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = random.nextLong();
+            filter.put(fingerprints[i]);
+        }
+
+        for (long fingerprint : fingerprints) {
+            assertTrue(filter.mightContain(fingerprint));
+        }
+    }
+
+    @Test
+    void putReportsOnlyNewFingerprints() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+
+        assertFalse(filter.mightContain(42));
+        assertTrue(filter.put(42));
+        assertFalse(filter.put(42));
+        assertTrue(filter.mightContain(42));
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        int insertions = 20_000;
+        BloomFilter filter = new BloomFilter(insertions, 0.01);
+        SplittableRandom random = new SplittableRandom(2);
+        for (int i = 0; i < insertions; i++) {
+            filter.put(random.nextLong());
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < probes * 0.02, "ложных срабатываний: " + falsePositives);
+        assertTrue(filter.expectedFalsePositiveRate(insertions) < 0.015);
+    }
+
+    @Test
+    void sizingFollowsExpectedInsertions() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+
+        // около 9,6 бита на элемент и 7 хэшей при p = 1%
+        assertTrue(filter.getBitCount() >= 9_585 && filter.getBitCount() % 64 == 0);
+        assertEquals(7, filter.getHashCount());
+        assertEquals(64, new BloomFilter(0, 0.5).getBitCount());
+    }
+}
@@ -0,0 +1,142 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedPostingListTest {
+
+    @Test
+    void emptyListHasNoPostings() {
+        CompressedPostingList list = CompressedPostingList.wrap(ByteBuffer.wrap(CompressedPostingList.encode(new PostingList())));
+
+        assertEquals(0, list.size());
+        assertEquals(PostingCursor.NO_MORE, list.cursor().advance(0));
+        PostingList decoded = new PostingList();
+        list.decodeInto(decoded);
+        assertEquals(0, decoded.size());
+    }
+
+    @Test
+    void singlePostingRoundTrip() {
+        PostingList source = new PostingList();
+        source.add(42, 3);
+        CompressedPostingList list = encode(source);
+
+        assertEquals(1, list.size());
+        PostingCursor cursor = list.cursor();
+        assertEquals(42, cursor.advance(0));
+        assertEquals(3f, cursor.rank());
+        assertEquals(42, cursor.advance(42));
+        assertEquals(PostingCursor.NO_MORE, cursor.advance(43));
+    }
+
+    @Test
+    void integralAndFractionalRanksRoundTripAcrossBlocks() {
+        PostingList source = new PostingList();
+        Random random = new Random(1);
+        int pageId = 0;
+        int size = CompressedPostingList.BLOCK_SIZE * 3 + 17;
+        for (int i = 0; i < size; i++) {
+            // разрывы больше 127 и 16383 дают varint в два и три байта
+            pageId += 1 + random.nextInt(i % 3 == 0 ? 20_000 : 100);
+            // во втором блоке есть дробный rank — он хранится как float, остальные блоки как varint
+            float rank = i == CompressedPostingList.BLOCK_SIZE + 5 ? 2.5f : 1 + random.nextInt(300);
+            source.add(pageId, rank);
+        }
+
+        PostingList decoded = new PostingList();
+        encode(source).decodeInto(decoded);
+
+        assertEquals(source.size(), decoded.size());
+        for (int i = 0; i < source.size(); i++) {
+            assertEquals(source.pageId(i), decoded.pageId(i));
+            assertEquals(source.rank(i), decoded.rank(i));
+        }
+    }
+
+    @Test
+    void cursorVisitsEveryPostingInOrder() {
+        PostingList source = sequence(1, 3, CompressedPostingList.BLOCK_SIZE * 2 + 1);
+        PostingCursor cursor = encode(source).cursor();
+
+        int pageId = cursor.advance(0);
+        for (int i = 0; i < source.size(); i++) {
+            assertEquals(source.pageId(i), pageId);
+            assertEquals(source.rank(i), cursor.rank());
+            pageId = cursor.advance(pageId + 1);
+        }
+        assertEquals(PostingCursor.NO_MORE, pageId);
+    }
+
+    @Test
+    void advanceSkipsWholeBlocks() {
+        // id 10, 20, 30 ...: блок k начинается с 10 * (k * BLOCK_SIZE + 1)
+        int blockSpan = 10 * CompressedPostingList.BLOCK_SIZE;
+        PostingList source = sequence(10, 10, CompressedPostingList.BLOCK_SIZE * 4);
+        PostingCursor cursor = encode(source).cursor();
+
+        // первая страница третьего блока
+        assertEquals(2 * blockSpan + 10, cursor.advance(2 * blockSpan + 10));
+        // id между страницами в середине блока
+        assertEquals(2 * blockSpan + 60, cursor.advance(2 * blockSpan + 55));
+        // последняя страница блока, затем первая следующего
+        assertEquals(3 * blockSpan, cursor.advance(3 * blockSpan));
+        assertEquals(3 * blockSpan + 10, cursor.advance(3 * blockSpan + 1));
+        // последняя страница списка и выход за конец
+        assertEquals(4 * blockSpan, cursor.advance(4 * blockSpan - 5));
+        assertEquals(PostingCursor.NO_MORE, cursor.advance(4 * blockSpan + 1));
+        assertEquals(PostingCursor.NO_MORE, cursor.advance(4 * blockSpan + 100));
+    }
+
+    @Test
+    void advanceToGapBetweenBlocksReturnsNextBlockStart() {
+        PostingList source = new PostingList();
+        for (int i = 0; i < CompressedPostingList.BLOCK_SIZE; i++) {
+            source.add(i, 1);
+        }
+        for (int i = 0; i < CompressedPostingList.BLOCK_SIZE; i++) {
+            source.add(10_000 + i, 2);
+        }
+        PostingCursor cursor = encode(source).cursor();
+
+        assertEquals(10_000, cursor.advance(CompressedPostingList.BLOCK_SIZE));
+        assertEquals(2f, cursor.rank());
+    }
+
+    @Test
+    void advanceBeforeFirstPostingReturnsFirst() {
+        PostingCursor cursor = encode(sequence(1000, 7, 300)).cursor();
+
+        assertEquals(1000, cursor.advance(0));
+        assertEquals(1000, cursor.advance(1000));
+    }
+
+    @Test
+    void decodesFromSliceOfLargerBuffer() {
+        byte[] encoded = CompressedPostingList.encode(sequence(5, 5, 200));
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 16);
+        buffer.position(8);
+        buffer.put(encoded);
+
+        CompressedPostingList list = CompressedPostingList.wrap(buffer.slice(8, encoded.length));
+
+        assertEquals(200, list.size());
+        assertEquals(1000, list.cursor().advance(996));
+    }
+
+    private static CompressedPostingList encode(PostingList list) {
+        return CompressedPostingList.wrap(ByteBuffer.wrap(CompressedPostingList.encode(list)));
+    }
+
+    private static PostingList sequence(int first, int step, int size) {
+        PostingList list = new PostingList();
+        for (int i = 0; i < size; i++) {
+            list.add(first + i * step, 1 + i % 5);
+        }
+        return list;
+    }
+}
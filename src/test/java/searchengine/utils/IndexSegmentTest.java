@@ -0,0 +1,149 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSegmentTest {
+
+    @Test
+    void writtenSegmentFindsEveryLemma() throws IOException {
+        Map<String, PostingList> lemmas = lemmas();
+        IndexSegment segment = IndexSegment.open(ByteBuffer.wrap(write(lemmas)));
+
+        assertEquals(lemmas.size(), segment.lemmaCount());
+        for (Map.Entry<String, PostingList> entry : lemmas.entrySet()) {
+            CompressedPostingList postings = segment.get(entry.getKey());
+            assertNotNull(postings, entry.getKey());
+            PostingList decoded = new PostingList();
+            postings.decodeInto(decoded);
+            assertEquals(entry.getValue().size(), decoded.size());
+            for (int i = 0; i < decoded.size(); i++) {
+                assertEquals(entry.getValue().pageId(i), decoded.pageId(i));
+                assertEquals(entry.getValue().rank(i), decoded.rank(i));
+            }
+        }
+    }
+
+    @Test
+    void missingLemmaReturnsNull() throws IOException {
+        IndexSegment segment = IndexSegment.open(ByteBuffer.wrap(write(lemmas())));
+
+        assertNull(segment.get("а"));
+        assertNull(segment.get("домик"));
+        assertNull(segment.get("яяя"));
+        assertNull(segment.get(""));
+    }
+
+    @Test
+    void footerKeepsTotals() throws IOException {
+        Map<String, PostingList> lemmas = lemmas();
+        IndexSegment segment = IndexSegment.open(ByteBuffer.wrap(write(lemmas)));
+
+        long postingCount = 0;
+        long pageIdSum = 0;
+        double rankSum = 0;
+        for (PostingList list : lemmas.values()) {
+            postingCount += list.size();
+            for (int i = 0; i < list.size(); i++) {
+                pageIdSum += list.pageId(i);
+                rankSum += list.rank(i);
+            }
+        }
+        assertEquals(postingCount, segment.postingCount());
+        assertEquals(pageIdSum, segment.pageIdSum());
+        assertEquals(rankSum, segment.rankSum(), 1e-6);
+    }
+
+    @Test
+    void keysAreStoredInWriteOrder() throws IOException {
+        Map<String, PostingList> lemmas = lemmas();
+        IndexSegment segment = IndexSegment.open(ByteBuffer.wrap(write(lemmas)));
+
+        List<String> keys = new ArrayList<>(lemmas.keySet());
+        for (int i = 0; i < segment.lemmaCount(); i++) {
+            assertEquals(keys.get(i), new String(segment.keyBytes(i), StandardCharsets.UTF_8));
+            assertEquals(lemmas.get(keys.get(i)).size(), segment.postings(i).size());
+        }
+    }
+
+    @Test
+    void emptySegmentHasNoLemmas() throws IOException {
+        IndexSegment written = IndexSegment.open(ByteBuffer.wrap(write(new TreeMap<>())));
+
+        assertEquals(0, written.lemmaCount());
+        assertNull(written.get("дом"));
+        assertEquals(0, IndexSegment.empty().lemmaCount());
+        assertNull(IndexSegment.empty().get("дом"));
+    }
+
+    @Test
+    void mappedSegmentReadsFromFile() throws IOException {
+        Path file = Files.createTempFile("segment", ".idx");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                writeTo(out, lemmas());
+            }
+            IndexSegment segment = IndexSegment.map(file);
+
+            assertTrue(segment.isMapped());
+            assertEquals(lemmas().size(), segment.lemmaCount());
+            assertEquals(300, segment.get("дом").size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void rejectsBufferWithoutFooter() {
+        assertThrows(IOException.class, () -> IndexSegment.open(ByteBuffer.allocate(0)));
+        assertThrows(IOException.class, () -> IndexSegment.open(ByteBuffer.wrap(new byte[64])));
+
+        byte[] corrupted = assertDoesNotThrow(() -> write(lemmas()));
+        corrupted[corrupted.length - 40] ^= 1;
+        assertThrows(IOException.class, () -> IndexSegment.open(ByteBuffer.wrap(corrupted)));
+    }
+
+    // ключи по возрастанию байтов UTF-8: латиница раньше кириллицы
+    private static Map<String, PostingList> lemmas() {
+        Map<String, PostingList> lemmas = new TreeMap<>((left, right) -> IndexSegment.compareKeys(
+                left.getBytes(StandardCharsets.UTF_8), right.getBytes(StandardCharsets.UTF_8)));
+        PostingList home = new PostingList();
+        for (int i = 0; i < 300; i++) {
+            home.add(i * 3 + 1, 1 + i % 4);
+        }
+        lemmas.put("дом", home);
+        PostingList single = new PostingList();
+        single.add(7, 0.5f);
+        lemmas.put("ёлка", single);
+        PostingList java = new PostingList();
+        java.add(2, 1);
+        java.add(40_000, 12);
+        lemmas.put("java", java);
+        lemmas.put("жук", new PostingList());
+        return lemmas;
+    }
+
+    private static byte[] write(Map<String, PostingList> lemmas) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out, lemmas);
+        return out.toByteArray();
+    }
+
+    private static void writeTo(OutputStream out, Map<String, PostingList> lemmas) throws IOException {
+        IndexSegment.Writer writer = new IndexSegment.Writer(out);
+        for (Map.Entry<String, PostingList> entry : lemmas.entrySet()) {
+            writer.add(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,92 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LemmaPositionsTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        // разности больше 127 и 16383 кодируются несколькими байтами varint
+        LemmaPositions positions = positions(0, 0, 5, 31, 200, 1_500, 20_000, 150_000, 20_001, 150_006);
+
+        LemmaPositions decoded = LemmaPositions.decode(positions.encode());
+
+        assertEquals(positions.size(), decoded.size());
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals(positions.ordinal(i), decoded.ordinal(i));
+            assertEquals(positions.offset(i), decoded.offset(i));
+        }
+    }
+
+    @Test
+    void emptyAndSinglePositionRoundTrip() {
+        LemmaPositions empty = new LemmaPositions();
+        assertArrayEquals(new byte[]{0}, empty.encode());
+        assertEquals(0, LemmaPositions.decode(empty.encode()).size());
+
+        LemmaPositions single = LemmaPositions.decode(positions(3, 17).encode());
+        assertEquals(1, single.size());
+        assertEquals(3, single.ordinal(0));
+        assertEquals(17, single.offset(0));
+    }
+
+    @Test
+    void addGrowsBeyondInitialCapacity() {
+        LemmaPositions positions = new LemmaPositions(1);
+        for (int i = 0; i < 100; i++) {
+            positions.add(i * 2, i * 10);
+        }
+
+        assertEquals(100, positions.size());
+        assertTrue(positions.containsOrdinal(198));
+        assertFalse(positions.containsOrdinal(199));
+    }
+
+    @Test
+    void mergeKeepsOrdinalOrder() {
+        LemmaPositions merged = LemmaPositions.merge(positions(1, 10, 7, 70), positions(3, 30, 9, 90, 12, 120));
+
+        assertEquals(5, merged.size());
+        int[] expected = {1, 3, 7, 9, 12};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], merged.ordinal(i));
+            assertEquals(expected[i] * 10, merged.offset(i));
+        }
+        assertEquals(2, LemmaPositions.merge(positions(4, 0, 5, 0), new LemmaPositions()).size());
+    }
+
+    @Test
+    void containsPhraseChecksGaps() {
+        // "красная ... площадь": слова 5 и 6, а также 20 и 22 (через одно слово)
+        LemmaPositions red = positions(5, 0, 20, 0);
+        LemmaPositions square = positions(6, 0, 22, 0);
+
+        assertTrue(LemmaPositions.containsPhrase(List.of(red, square), new int[]{0, 1}));
+        assertTrue(LemmaPositions.containsPhrase(List.of(red, square), new int[]{0, 2}));
+        assertFalse(LemmaPositions.containsPhrase(List.of(red, square), new int[]{0, 3}));
+        assertFalse(LemmaPositions.containsPhrase(List.of(new LemmaPositions(), square), new int[]{0, 1}));
+    }
+
+    @Test
+    void minimalSpanFindsClosestWindow() {
+        LemmaPositions first = positions(1, 0, 50, 0);
+        LemmaPositions second = positions(10, 0, 47, 0);
+        LemmaPositions third = positions(30, 0, 52, 0);
+
+        assertEquals(5, LemmaPositions.minimalSpan(List.of(first, second, third)));
+        assertEquals(0, LemmaPositions.minimalSpan(List.of(first)));
+        assertEquals(Integer.MAX_VALUE, LemmaPositions.minimalSpan(List.of(first, new LemmaPositions())));
+    }
+
+    private static LemmaPositions positions(int... pairs) {
+        LemmaPositions positions = new LemmaPositions();
+        for (int i = 0; i < pairs.length; i += 2) {
+            positions.add(pairs[i], pairs[i + 1]);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,82 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingCursorTest {
+
+    @Test
+    void unionMergesIdsAndPrefersOverrideRank() {
+        PostingCursor union = PostingCursor.union(list(1, 1, 3, 1, 5, 1).cursor(), list(3, 9, 4, 9).cursor());
+
+        assertEquals(1, union.advance(0));
+        assertEquals(1f, union.rank());
+        assertEquals(3, union.advance(2));
+        assertEquals(9f, union.rank());
+        assertEquals(4, union.advance(4));
+        assertEquals(9f, union.rank());
+        assertEquals(5, union.advance(5));
+        assertEquals(1f, union.rank());
+        assertEquals(PostingCursor.NO_MORE, union.advance(6));
+    }
+
+    @Test
+    void unionWithEmptyOverridesReturnsBase() {
+        PostingCursor union = PostingCursor.union(list(2, 1, 7, 2).cursor(), new PostingList().cursor());
+
+        assertEquals(2, union.advance(0));
+        assertEquals(7, union.advance(3));
+        assertEquals(2f, union.rank());
+        assertEquals(PostingCursor.NO_MORE, union.advance(8));
+    }
+
+    @Test
+    void skippingHidesMaskedPages() {
+        Set<Integer> removed = Set.of(2, 3, 6);
+        PostingCursor cursor = PostingCursor.skipping(list(1, 1, 2, 1, 3, 1, 4, 4, 6, 1).cursor(), removed::contains);
+
+        assertEquals(1, cursor.advance(0));
+        assertEquals(4, cursor.advance(2));
+        assertEquals(4f, cursor.rank());
+        assertEquals(PostingCursor.NO_MORE, cursor.advance(5));
+    }
+
+    @Test
+    void postingListSealSortsAndDeduplicates() {
+        PostingList list = new PostingList();
+        list.append(5, 1);
+        list.append(2, 1);
+        list.append(5, 1);
+        list.append(3, 1);
+        list.seal();
+
+        assertEquals(3, list.size());
+        assertEquals(2, list.pageId(0));
+        assertEquals(3, list.pageId(1));
+        assertEquals(5, list.pageId(2));
+    }
+
+    @Test
+    void postingListAddReplacesRankAndKeepsOrder() {
+        PostingList list = list(1, 1, 5, 1);
+        list.add(3, 2);
+        list.add(5, 7);
+
+        assertEquals(3, list.size());
+        assertEquals(3, list.pageId(1));
+        assertEquals(7f, list.rank(2));
+        assertEquals(1, list.removeAll(Set.of(3, 100)));
+        assertEquals(5, list.pageId(1));
+    }
+
+    private static PostingList list(float... pairs) {
+        PostingList list = new PostingList();
+        for (int i = 0; i < pairs.length; i += 2) {
+            list.add((int) pairs[i], pairs[i + 1]);
+        }
+        return list;
+    }
+}
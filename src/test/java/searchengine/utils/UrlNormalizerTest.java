@@ -0,0 +1,60 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlNormalizerTest {
+
+    @Test
+    void lowercasesSchemeAndHostButNotPath() {
+        assertEquals("https://example.com/Catalog/Item", UrlNormalizer.normalize("HTTPS://Example.COM/Catalog/Item"));
+    }
+
+    @Test
+    void dropsDefaultPortsOnly() {
+        assertEquals("http://example.com/a", UrlNormalizer.normalize("http://example.com:80/a"));
+        assertEquals("https://example.com/a", UrlNormalizer.normalize("https://example.com:443/a"));
+        assertEquals("http://example.com:443/a", UrlNormalizer.normalize("http://example.com:443/a"));
+        assertEquals("http://example.com:8080/a", UrlNormalizer.normalize("http://example.com:8080/a"));
+    }
+
+    @Test
+    void addsRootPathAndKeepsTrailingSlash() {
+        assertEquals("https://example.com/", UrlNormalizer.normalize("https://example.com"));
+        assertEquals("https://example.com/news/", UrlNormalizer.normalize("https://example.com/news/"));
+        assertEquals("https://example.com/news", UrlNormalizer.normalize("https://example.com/news"));
+    }
+
+    @Test
+    void removesFragment() {
+        assertEquals("https://example.com/page", UrlNormalizer.normalize("https://example.com/page#section"));
+        assertEquals("https://example.com/", UrlNormalizer.normalize("https://example.com#top"));
+    }
+
+    @Test
+    void sortsQueryAndDropsEmptyParameters() {
+        assertEquals("https://example.com/s?a=1&b=2", UrlNormalizer.normalize("https://example.com/s?b=2&&a=1&"));
+        assertEquals("https://example.com/s", UrlNormalizer.normalize("https://example.com/s?"));
+        assertEquals("https://example.com/s", UrlNormalizer.normalize("https://example.com/s?&&"));
+    }
+
+    @Test
+    void keepsEncodedCharacters() {
+        assertEquals("https://example.com/%D0%B4%D0%BE%D0%BC?q=%20",
+                UrlNormalizer.normalize("  https://example.com/%D0%B4%D0%BE%D0%BC?q=%20  "));
+    }
+
+    @Test
+    void rejectsUrlsWithoutSchemeOrHost() {
+        assertNull(UrlNormalizer.normalize(null));
+        assertNull(UrlNormalizer.normalize("   "));
+        assertNull(UrlNormalizer.normalize("/relative/path"));
+        assertNull(UrlNormalizer.normalize("mailto:info@example.com"));
+    }
+
+    @Test
+    void unparsableUrlIsReturnedWithoutFragment() {
+        assertEquals("https://example.com/a b", UrlNormalizer.normalize("https://example.com/a b#x"));
+    }
+}